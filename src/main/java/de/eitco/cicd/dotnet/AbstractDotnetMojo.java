@@ -1,6 +1,9 @@
 package de.eitco.cicd.dotnet;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Component;
@@ -13,12 +16,20 @@ import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public abstract class AbstractDotnetMojo extends AbstractMojo {
 
     public static final String SUFFIX_SNAPSHOT = "-SNAPSHOT";
+    public static final String ISOLATED_NUGET_CONFIG_FILE_NAME = "nuget.config";
     /**
      * This parameter specifies the directory where to execute {@code dotnet} and thus where the
      * project files are located
@@ -220,6 +231,168 @@ public abstract class AbstractDotnetMojo extends AbstractMojo {
     @Parameter
     protected Map<String, String> inlineRunSettings = Map.of();
 
+    /**
+     * This parameter specifies whether to keep the MSBuild server and the Roslyn compiler server running for the whole
+     * maven session. If set to {@code true} every msbuild based {@code dotnet} command ({@code build}, {@code test},
+     * {@code pack} and {@code clean}) is called with node reuse and shared compilation enabled, so that the servers
+     * started by the first module are reused by all later modules of the reactor. The servers are shut down by
+     * {@code dotnet build-server shutdown} when the maven session ends - regardless of whether the build succeeded.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.buildServer")
+    protected boolean useBuildServer;
+
+    /**
+     * This parameter specifies whether to suppress the regular output of {@code dotnet}. If set to {@code true} only
+     * warnings and errors reported by msbuild are written to the log - each of them once. Should a command fail, the
+     * last {@link #outputTailLines lines} of its output are written to the log.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.quiet")
+    protected boolean quiet;
+
+    /**
+     * This parameter specifies how many lines of the output of a {@code dotnet} command are kept in memory to be
+     * presented should the command fail in {@link #quiet quiet mode}. Independent of this parameter, at least the last
+     * 100 lines are kept to decide whether a failed command is retried.
+     */
+    @Parameter(defaultValue = "200", property = "dotnet.outputTailLines")
+    protected int outputTailLines;
+
+    /**
+     * This parameter specifies whether to record every {@code dotnet} process launched in the file
+     * {@code timeline.json} in the {@link #targetDirectory target directory}. Each entry contains the module, the
+     * command (with secrets masked), its start time, duration, exit code and attempt. The file covers a single build -
+     * the timeline of an earlier build is replaced. Independent of this parameter
+     * every process launch is recorded as a {@code de.eitco.cicd.dotnet.Invocation} java flight recorder event.
+     */
+    @Parameter(defaultValue = "true", property = "dotnet.timeline")
+    protected boolean writeTimeline;
+
+    /**
+     * This parameter specifies the maximum time, in seconds, a single {@code dotnet} process may run. If a process
+     * exceeds this time, it is destroyed - together with all processes it started, like msbuild nodes or test hosts -
+     * and the goal fails. A value of {@code 0} disables the timeout. The timeout can be overridden for specific goals
+     * with {@link #goalTimeouts}.
+     */
+    @Parameter(defaultValue = "0", property = "dotnet.timeout")
+    protected int timeout;
+
+    /**
+     * This parameter specifies timeouts, in seconds, for specific goals. The key is the name of the goal (e.g.
+     * {@code build}, {@code test}, {@code pack} or {@code push}), the value is the timeout that overrides
+     * {@link #timeout} for that goal. For example:
+     * <pre>
+     * {@code
+     * <goalTimeouts>
+     *   <test>1800</test>
+     *   <push>300</push>
+     * </goalTimeouts>
+     * }
+     * </pre>
+     */
+    @Parameter
+    protected Map<String, String> goalTimeouts = Map.of();
+
+    /**
+     * This parameter specifies how often failed {@code dotnet} commands are retried. The key is the name of the
+     * operation - one of {@code build}, {@code clean}, {@code restore}, {@code push} and {@code upsertNugetSource} - the
+     * value is the number of retries. By default {@code build} and {@code clean} are retried once, {@code restore}
+     * and {@code push} - of every single package - twice. Only failures that are
+     * considered transient - like an unreachable nuget feed or files locked by another process - are retried, compiler
+     * errors or failing tests are not.
+     */
+    @Parameter
+    protected Map<String, String> retries = Map.of();
+
+    /**
+     * This parameter specifies the time, in milliseconds, to wait before the first retry of a failed command. The time
+     * doubles with every further retry up to {@link #retryMaxDelayMillis} and is randomly reduced by up to one half.
+     */
+    @Parameter(defaultValue = "1000", property = "dotnet.retryInitialDelayMillis")
+    protected long retryInitialDelayMillis;
+
+    /**
+     * This parameter specifies the maximum time, in milliseconds, to wait between two attempts of a failed command.
+     */
+    @Parameter(defaultValue = "30000", property = "dotnet.retryMaxDelayMillis")
+    protected long retryMaxDelayMillis;
+
+    /**
+     * This parameter specifies whether to create binary logs of {@code dotnet build}, {@code dotnet test} and
+     * {@code dotnet pack}. If set to {@code true}, the binary log of each of these commands is written to the
+     * {@link #targetDirectory target directory} and evaluated afterward: the file {@code <command>-binlog-report.txt}
+     * lists the slowest project evaluations, projects, targets, tasks and analyzers as well as the reason msbuild gave
+     * for every target it did not skip as up-to-date.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.binaryLog")
+    protected boolean binaryLog;
+
+    /**
+     * This parameter specifies whether to use a nuget configuration private to this build instead of registering
+     * sources in the user configuration and the {@code nuget.config} files of the project. If set to {@code true}, the
+     * {@code initialize} goal generates {@code nuget.config} in the {@link #targetDirectory target directory} -
+     * containing the default sources, the local repository and the configured {@link #nugetSources} with their
+     * credentials - and every {@code dotnet} command restoring packages uses only this configuration
+     * ({@code -p:RestoreConfigFile=...}). Concurrent builds on the same machine then never modify a shared nuget
+     * configuration.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.isolatedNugetConfig")
+    protected boolean isolatedNugetConfig;
+
+    /**
+     * This parameter specifies the directory of a build cache. If set, the {@code build} goal stores the {@code bin}
+     * and {@code obj} directories of the project and the {@code pack} goal stores the packages it created in this
+     * directory - addressed by a hash of their inputs (see {@code incrementalBuild} of the {@code build} goal). Should
+     * a later build - in this or any other workspace or on any other machine sharing the directory - find an entry for
+     * its inputs, it restores the entry instead of calling {@code dotnet}. Since msbuild writes absolute paths to the
+     * {@code obj} directory, the location of the project is part of the inputs: workspaces need to be located at the
+     * same path to share entries.
+     */
+    @Parameter(property = "dotnet.buildCache")
+    protected File buildCacheDirectory;
+
+    /**
+     * This parameter specifies the maximum size, in megabytes, of the {@link #buildCacheDirectory build cache}. When
+     * it is exceeded, the least recently used entries are deleted. A value of {@code 0} disables the limit.
+     */
+    @Parameter(defaultValue = "10240", property = "dotnet.buildCacheMaxSize")
+    protected long buildCacheMaxSize;
+
+    /**
+     * This parameter specifies how many snapshot versions of every package id the local nuget repository keeps when it
+     * is purged - by the {@code purge-local} goal or, if {@link #purgeLocalRepository} is enabled, by the
+     * {@code install} goal. A version is a snapshot version if it ends with {@code -SNAPSHOT} or with the
+     * {@link #snapshotReplacement}. Release versions are never purged. A negative value keeps all snapshot versions.
+     */
+    @Parameter(defaultValue = "3", property = "dotnet.keepSnapshots")
+    protected int keepSnapshots;
+
+    /**
+     * This parameter specifies the number of days after which a snapshot version that was not used is purged from the
+     * local nuget repository. A value of {@code 0} disables this limit.
+     */
+    @Parameter(defaultValue = "30", property = "dotnet.maxSnapshotAgeDays")
+    protected int maxSnapshotAgeDays;
+
+    /**
+     * This parameter specifies the maximum size, in megabytes, of the local nuget repository. If a purge finds it
+     * exceeded, the least recently used snapshot versions are removed. A value of {@code 0} disables the limit.
+     */
+    @Parameter(defaultValue = "0", property = "dotnet.localRepositoryMaxSize")
+    protected long localRepositoryMaxSize;
+
+    /**
+     * This parameter specifies whether the {@code install} goal purges the local nuget repository - once per build -
+     * according to {@link #keepSnapshots}, {@link #maxSnapshotAgeDays} and {@link #localRepositoryMaxSize}.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.purgeLocalRepository")
+    protected boolean purgeLocalRepository;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    protected MojoExecution mojoExecution;
+
+    @Component
+    protected MavenSession session;
+
     @Component(hint = "dotnet-security")
     private SecDispatcher securityDispatcher;
 
@@ -229,21 +402,270 @@ public abstract class AbstractDotnetMojo extends AbstractMojo {
     }
 
     protected DotnetExecutor newExecutor(boolean ignoreResult) throws MojoExecutionException {
+
+        return newExecutor(ignoreResult, false);
+    }
+
+    /**
+     * @param noRestore whether msbuild based commands should be called with {@code --no-restore} - see
+     *                  {@link #isRestoreUpToDate()}
+     */
+    protected DotnetExecutor newExecutor(boolean ignoreResult, boolean noRestore) throws MojoExecutionException {
+
+        File executable = resolveDotnetExecutable();
+
+        if (useBuildServer) {
+
+            DotnetBuildServer.register(session, executable);
+        }
+
         return new DotnetExecutor(
                 workingDirectory,
-                resolveDotnetExecutable(),
+                executable,
                 targetDirectory,
                 projectVersion,
                 buildProperties(),
                 environmentVariables,
                 inlineRunSettings,
                 getLog(),
-                ignoreResult
+                ignoreResult,
+                useBuildServer,
+                quiet,
+                outputTailLines,
+                new InvocationRecorder(
+                        session.getCurrentProject().getArtifactId(),
+                        timelineFile(),
+                        getLog()
+                ),
+                resolveTimeout(),
+                this::reactorFailed,
+                retryPolicy(),
+                binaryLog,
+                noRestore,
+                getIsolatedNugetConfigFile()
+        );
+    }
+
+    /**
+     * @return the {@link #writeTimeline timeline file} of the current module - {@code null} if it is not written. The
+     * timeline of an earlier build is deleted before the first invocation of this build. Goals not requiring a project
+     * - like {@code purge-local} - write no timeline when run without one, since the target directory would be created
+     * in whatever directory they are run from.
+     */
+    private File timelineFile() throws MojoExecutionException {
+
+        if (!writeTimeline || session.getCurrentProject().getFile() == null) {
+
+            return null;
+        }
+
+        File file = new File(targetDirectory, InvocationRecorder.TIMELINE_FILE_NAME);
+
+        return SessionCache.get(session, "timeline:" + file.getAbsolutePath(), () -> {
+
+            try {
+
+                Files.deleteIfExists(file.toPath());
+
+            } catch (IOException e) {
+
+                throw new MojoExecutionException("unable to delete timeline " + file, e);
+            }
+
+            return file;
+        });
+    }
+
+    protected int resolveTimeout() throws MojoExecutionException {
+
+        String goalTimeout = goalTimeouts.get(mojoExecution.getGoal());
+
+        if (goalTimeout == null || goalTimeout.isBlank()) {
+
+            return timeout;
+        }
+
+        try {
+
+            return Integer.parseInt(goalTimeout.trim());
+
+        } catch (NumberFormatException e) {
+
+            throw new MojoExecutionException("invalid timeout for goal " + mojoExecution.getGoal() + ": " + goalTimeout, e);
+        }
+    }
+
+    protected RetryPolicy retryPolicy() throws MojoExecutionException {
+
+        Map<String, Integer> configuredRetries = new HashMap<>(RetryPolicy.DEFAULT_RETRIES);
+
+        for (Map.Entry<String, String> entry : retries.entrySet()) {
+
+            try {
+
+                configuredRetries.put(entry.getKey(), Integer.parseInt(entry.getValue().trim()));
+
+            } catch (NumberFormatException e) {
+
+                throw new MojoExecutionException("invalid number of retries for " + entry.getKey() + ": " + entry.getValue(), e);
+            }
+        }
+
+        return new RetryPolicy(configuredRetries, retryInitialDelayMillis, retryMaxDelayMillis);
+    }
+
+    private boolean reactorFailed() {
+
+        return MavenExecutionRequest.REACTOR_FAIL_FAST.equals(session.getReactorFailureBehavior()) && session.getResult().hasExceptions();
+    }
+
+    /**
+     * @return the configured build cache or {@code null} if no build cache is configured
+     */
+    protected BuildCache buildCache() {
+
+        if (buildCacheDirectory == null) {
+
+            return null;
+        }
+
+        return new DirectoryBuildCache(buildCacheDirectory.toPath(), buildCacheMaxSize * 1024 * 1024, getLog());
+    }
+
+    /**
+     * @return the context this plugin shares between the goals executed for the current project
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> pluginContext() {
+
+        return (Map<String, Object>) getPluginContext();
+    }
+
+    /**
+     * @return a fingerprint of the inputs every goal calling msbuild shares - including the resolved dependencies, like
+     * snapshot packages installed by other modules - to be extended by the goal specific inputs
+     */
+    protected BuildFingerprint inputFingerprint(DotnetExecutor executor) throws MojoExecutionException {
+
+        return new BuildFingerprint(workingDirectory)
+                .exclude(targetDirectory)
+                .resolvedDependencies()
+                .property("goal", mojoExecution.getGoal())
+                .property("workingDirectory", workingDirectory.getAbsolutePath())
+                .property("sdk", executor.sdkVersion())
+                .property("version", projectVersion)
+                .properties("property", buildProperties());
+    }
+
+    /**
+     * @return the {@link #isolatedNugetConfig isolated nuget configuration} of this build - {@code null} if it is not
+     * used
+     */
+    protected File getIsolatedNugetConfigFile() {
+
+        return isolatedNugetConfig ? new File(targetDirectory, ISOLATED_NUGET_CONFIG_FILE_NAME) : null;
+    }
+
+    /**
+     * @return the policy to {@link LocalNugetRepository#purge(LocalNugetRepository.PurgePolicy, java.nio.file.Path)
+     * purge} the local nuget repository with
+     */
+    protected LocalNugetRepository.PurgePolicy purgePolicy() {
+
+        String replacement = snapshotReplacement == null ? "" : snapshotReplacement.toLowerCase(Locale.ROOT);
+
+        Pattern replacementPattern = replacement.isEmpty() ? null : Pattern.compile(
+                Arrays.stream(replacement.split("%c", -1)).map(Pattern::quote).collect(Collectors.joining(".+")) + "$"
+        );
+
+        return new LocalNugetRepository.PurgePolicy(
+                keepSnapshots,
+                TimeUnit.DAYS.toMillis(maxSnapshotAgeDays),
+                localRepositoryMaxSize * 1024 * 1024,
+                version -> version.endsWith(SUFFIX_SNAPSHOT.toLowerCase(Locale.ROOT)) ||
+                        (replacementPattern != null && replacementPattern.matcher(version).find())
         );
     }
 
+    /**
+     * @return nuget's global packages folder - determined once per session
+     */
+    protected File getGlobalPackagesDirectory() throws MojoExecutionException {
+
+        DotnetExecutor executor = newExecutor();
+
+        return SessionCache.get(session, "global-packages:" + DotnetBuildServer.executableName(executor.executable()) + "|" + workingDirectory.getAbsolutePath(),
+                () -> new File(executor.getLocalArtifactCache()));
+    }
+
+    protected File getRestoreFingerprintFile() {
+
+        return new File(targetDirectory, RestoreMojo.FINGERPRINT_FILE_NAME);
+    }
+
+    /**
+     * @return a fingerprint of everything that influences {@code dotnet restore}: project, solution, props and
+     * targets files, lock files and nuget configurations, as well as the properties given to {@code dotnet} and the sdk
+     * configured.
+     */
+    protected BuildFingerprint restoreFingerprint() throws IOException {
+
+        File isolatedNugetConfigFile = getIsolatedNugetConfigFile();
+
+        return new BuildFingerprint(workingDirectory)
+                .property("isolatedNugetConfig", isolatedNugetConfigFile != null && isolatedNugetConfigFile.isFile() ?
+                        BuildFingerprint.hash(isolatedNugetConfigFile.toPath()) : "")
+                .exclude(targetDirectory)
+                .files(RestoreMojo::isRestoreInput)
+                .property("workingDirectory", workingDirectory.getAbsolutePath())
+                .property("dotnetExecutable", dotnetExecutable)
+                .property("dotnetSdkVersion", dotnetSdkVersion)
+                .property("version", projectVersion)
+                .properties("property", buildProperties());
+    }
+
+    /**
+     * @return whether the {@code restore} goal restored the current state of the project. This is the case if the
+     * {@link #restoreFingerprint() restore inputs} did not change since then and every project still has its assets
+     * file.
+     */
+    protected boolean isRestoreUpToDate() throws MojoExecutionException {
+
+        File fingerprintFile = getRestoreFingerprintFile();
+
+        if (!fingerprintFile.isFile()) {
+
+            return false;
+        }
+
+        try {
+
+            if (!RestoreMojo.assetsFilesExist(workingDirectory, targetDirectory)) {
+
+                getLog().debug("assets files are missing - restore is required");
+                return false;
+            }
+
+            boolean upToDate = BuildFingerprint.matches(fingerprintFile, restoreFingerprint().compute());
+
+            getLog().debug("restore inputs " + (upToDate ? "did not change" : "changed") + " since the last restore");
+
+            return upToDate;
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    /**
+     * resolves the {@code dotnet} executable once per session for every combination of the parameters it depends on.
+     */
     protected File resolveDotnetExecutable() throws MojoExecutionException {
-        return DotnetExecutableResolver.resolve(dotnetExecutable, dotnetSdkVersion, dotnetSdkProvisioner());
+
+        String key = "dotnet-executable:" + dotnetExecutable + "|" + dotnetSdkVersion + "|" + getResolvedDotnetSdkCacheDirectory().getAbsolutePath();
+
+        return SessionCache.get(session, key, () -> DotnetExecutableResolver.resolve(dotnetExecutable, dotnetSdkVersion, dotnetSdkProvisioner()));
     }
 
     protected DotnetSdkProvisioner dotnetSdkProvisioner() {
@@ -254,7 +676,7 @@ public abstract class AbstractDotnetMojo extends AbstractMojo {
         return resolveConfiguredDirectory(dotnetSdkCacheBaseDirectory, dotnetSdkCacheName);
     }
 
-    private Map<String, String> buildProperties() {
+    protected Map<String, String> buildProperties() {
 
         LinkedHashMap<String, String> result = new LinkedHashMap<>(customProperties);
 
@@ -0,0 +1,261 @@
+package de.eitco.cicd.dotnet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the diagnostic text log msbuild creates when replaying a binary log with the performance summary enabled,
+ * and presents the slowest project evaluations, projects, targets, tasks and analyzers as well as the reasons why
+ * targets were (re)built.
+ */
+public class BinaryLogReport {
+
+    public static final int DEFAULT_ENTRIES = 20;
+
+    private static final Pattern SUMMARY_ENTRY_PATTERN = Pattern.compile("^\\s*(?<millis>\\d+) ms\\s+(?<name>.+?)\\s+(?<calls>\\d+) calls\\s*$");
+    private static final Pattern ANALYZER_ENTRY_PATTERN = Pattern.compile("^\\s*(?<seconds><?\\d+(\\.\\d+)?)\\s+<?\\d+\\s+(?<name>\\S.*?)\\s*$");
+    private static final Pattern BUILDING_TARGET_PATTERN = Pattern.compile("Building target \"(?<target>[^\"]+)\" (?<mode>completely|partially)");
+    private static final Pattern SKIPPING_TARGET_PATTERN = Pattern.compile("Skipping target \"(?<target>[^\"]+)\" because all output files are up-to-date");
+    private static final Pattern REASON_PATTERN = Pattern.compile("(Input file .* is newer than output file .*|Output file .* does not exist.*|because .*)");
+
+    private enum Section {
+
+        NONE("", ""),
+        EVALUATION("Project Evaluation Performance Summary:", "project evaluation"),
+        PROJECT("Project Performance Summary:", "projects"),
+        TARGET("Target Performance Summary:", "targets"),
+        TASK("Task Performance Summary:", "tasks"),
+        ANALYZER("Total analyzer execution time:", "analyzers");
+
+        private final String header;
+        private final String title;
+
+        Section(String header, String title) {
+            this.header = header;
+            this.title = title;
+        }
+    }
+
+    public record Entry(String name, long millis, long calls) {
+    }
+
+    private final Map<Section, Map<String, Entry>> entries = new LinkedHashMap<>();
+    private final Map<String, String> rebuiltTargets = new LinkedHashMap<>();
+    private int skippedTargets;
+
+    public static BinaryLogReport parse(Path textLog) throws IOException {
+
+        BinaryLogReport report = new BinaryLogReport();
+
+        try (BufferedReader reader = Files.newBufferedReader(textLog, StandardCharsets.UTF_8)) {
+
+            Section section = Section.NONE;
+            String pendingTarget = null;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                Section header = headerOf(line);
+
+                if (header != null) {
+
+                    section = header;
+                    continue;
+                }
+
+                if (section != Section.NONE && line.isBlank()) {
+
+                    if (section != Section.ANALYZER) {
+
+                        section = Section.NONE;
+                    }
+
+                    continue;
+                }
+
+                if (section == Section.ANALYZER) {
+
+                    if (!report.addAnalyzer(line) && !line.contains("Analyzer")) {
+
+                        section = Section.NONE;
+                    }
+
+                    continue;
+                }
+
+                if (section != Section.NONE) {
+
+                    report.addSummaryEntry(section, line);
+                    continue;
+                }
+
+                if (pendingTarget != null) {
+
+                    Matcher reason = REASON_PATTERN.matcher(line.trim());
+
+                    if (reason.find()) {
+
+                        report.rebuiltTargets.put(pendingTarget, reason.group(1));
+                        pendingTarget = null;
+                        continue;
+                    }
+                }
+
+                Matcher building = BUILDING_TARGET_PATTERN.matcher(line);
+
+                if (building.find()) {
+
+                    pendingTarget = building.group("target");
+                    report.rebuiltTargets.putIfAbsent(pendingTarget, "built " + building.group("mode"));
+                    continue;
+                }
+
+                if (SKIPPING_TARGET_PATTERN.matcher(line).find()) {
+
+                    report.skippedTargets++;
+                }
+            }
+        }
+
+        return report;
+    }
+
+    private static Section headerOf(String line) {
+
+        String trimmed = line.trim();
+
+        for (Section section : Section.values()) {
+
+            if (section != Section.NONE && trimmed.startsWith(section.header)) {
+
+                return section;
+            }
+        }
+
+        return null;
+    }
+
+    private void addSummaryEntry(Section section, String line) {
+
+        Matcher matcher = SUMMARY_ENTRY_PATTERN.matcher(line);
+
+        if (!matcher.matches()) {
+
+            return;
+        }
+
+        add(section, new Entry(matcher.group("name"), Long.parseLong(matcher.group("millis")), Long.parseLong(matcher.group("calls"))));
+    }
+
+    private boolean addAnalyzer(String line) {
+
+        Matcher matcher = ANALYZER_ENTRY_PATTERN.matcher(line);
+
+        if (!matcher.matches()) {
+
+            return false;
+        }
+
+        String seconds = matcher.group("seconds");
+        long millis = seconds.startsWith("<") ? 0 : Math.round(Double.parseDouble(seconds) * 1000);
+
+        add(Section.ANALYZER, new Entry(matcher.group("name"), millis, 1));
+        return true;
+    }
+
+    private void add(Section section, Entry entry) {
+
+        entries.computeIfAbsent(section, key -> new LinkedHashMap<>()).merge(
+                entry.name(),
+                entry,
+                (first, second) -> new Entry(first.name(), first.millis() + second.millis(), first.calls() + second.calls())
+        );
+    }
+
+    public List<Entry> slowestProjectEvaluations(int count) {
+        return slowest(Section.EVALUATION, count);
+    }
+
+    public List<Entry> slowestProjects(int count) {
+        return slowest(Section.PROJECT, count);
+    }
+
+    public List<Entry> slowestTargets(int count) {
+        return slowest(Section.TARGET, count);
+    }
+
+    public List<Entry> slowestTasks(int count) {
+        return slowest(Section.TASK, count);
+    }
+
+    public List<Entry> slowestAnalyzers(int count) {
+        return slowest(Section.ANALYZER, count);
+    }
+
+    /**
+     * @return the targets that were not skipped as up-to-date, mapped to the reason msbuild gave for building them
+     */
+    public Map<String, String> rebuiltTargets() {
+        return rebuiltTargets;
+    }
+
+    public int skippedTargets() {
+        return skippedTargets;
+    }
+
+    private List<Entry> slowest(Section section, int count) {
+
+        List<Entry> result = new ArrayList<>(entries.getOrDefault(section, Map.of()).values());
+        result.sort(Comparator.comparingLong(Entry::millis).reversed());
+
+        return result.subList(0, Math.min(count, result.size()));
+    }
+
+    public void write(Path report, String title, int count) throws IOException {
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8))) {
+
+            writer.println(title);
+            writer.println();
+
+            for (Section section : Section.values()) {
+
+                if (section == Section.NONE) {
+
+                    continue;
+                }
+
+                writer.println("slowest " + section.title + ":");
+
+                List<Entry> slowest = slowest(section, count);
+
+                if (slowest.isEmpty()) {
+
+                    writer.println("  <none recorded>");
+                }
+
+                for (Entry entry : slowest) {
+
+                    writer.printf("  %8d ms  %6d calls  %s%n", entry.millis(), entry.calls(), entry.name());
+                }
+
+                writer.println();
+            }
+
+            writer.println("targets built (" + rebuiltTargets.size() + ", " + skippedTargets + " skipped as up-to-date):");
+
+            rebuiltTargets.forEach((target, reason) -> writer.println("  " + target + ": " + reason));
+        }
+    }
+}
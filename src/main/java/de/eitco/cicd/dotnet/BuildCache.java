@@ -0,0 +1,27 @@
+package de.eitco.cicd.dotnet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * A cache of build outputs, addressed by a hash of the inputs that produced them.
+ */
+public interface BuildCache {
+
+    /**
+     * restores the files stored with the given key into the given directory.
+     *
+     * @return {@code true} if an entry with the given key was found, {@code false} otherwise
+     */
+    boolean load(String key, Path destination) throws IOException;
+
+    /**
+     * stores the given files with the given key. Implementations need to make sure that concurrent readers never see
+     * a partial entry.
+     *
+     * @param base  the directory the given files are stored relative to
+     * @param files the files to store
+     */
+    void store(String key, Path base, Collection<Path> files) throws IOException;
+}
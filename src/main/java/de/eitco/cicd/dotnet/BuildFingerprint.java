@@ -0,0 +1,415 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a content hash of the inputs of a dotnet project: every file below its base directory - except for build
+ * outputs and version control data - the files msbuild and nuget inherit from parent directories and any number of
+ * additional properties, like command line parameters or the sdk version. Optionally, the
+ * {@link #resolvedDependencies() resolved dependencies} are included as well.
+ */
+public class BuildFingerprint {
+
+    public static final String ALGORITHM = "SHA-256";
+
+    /**
+     * names of directories that never contain inputs
+     */
+    public static final Set<String> EXCLUDED_DIRECTORIES = Set.of("bin", "obj", "target", "TestResults", "node_modules", ".git", ".vs", ".idea");
+
+    /**
+     * names of files msbuild, nuget or the dotnet cli pick up from parent directories
+     */
+    public static final Set<String> INHERITED_FILES = Set.of(
+            "directory.build.props", "directory.build.targets", "directory.build.rsp", "directory.packages.props", "global.json", "nuget.config"
+    );
+
+    /**
+     * the restore output listing the resolved packages and projects, relative to a project directory
+     */
+    public static final String ASSETS_FILE = "obj/project.assets.json";
+
+    private static final Pattern PROJECT_REFERENCE_PATTERN = Pattern.compile("<ProjectReference\\s+Include\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+
+    private final File baseDirectory;
+    private final List<Path> excludedPaths = new ArrayList<>();
+    private final SortedMap<String, String> properties = new TreeMap<>();
+    private Predicate<String> fileFilter = name -> true;
+    private Set<Path> visitedReferences;
+
+    public BuildFingerprint(File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    /**
+     * excludes the given directory - e.g. a custom output directory - from the fingerprint.
+     */
+    public BuildFingerprint exclude(File directory) {
+
+        excludedPaths.add(directory.toPath().toAbsolutePath().normalize());
+        return this;
+    }
+
+    /**
+     * restricts the files below the base directory taken into account to those whose lower case name matches the
+     * given filter.
+     */
+    public BuildFingerprint files(Predicate<String> fileFilter) {
+
+        this.fileFilter = fileFilter;
+        return this;
+    }
+
+    /**
+     * includes the resolved dependencies of the projects below the base directory: the packages listed in their
+     * {@link #ASSETS_FILE assets file} - with the hash of the package actually installed, so that a changed snapshot
+     * package counts as a change - and the fingerprints of referenced projects outside the base directory. Lock files
+     * are inputs anyway. To be used after {@code dotnet restore}, which writes the assets files.
+     */
+    public BuildFingerprint resolvedDependencies() {
+
+        if (visitedReferences == null) {
+
+            visitedReferences = new HashSet<>();
+        }
+
+        return this;
+    }
+
+    public BuildFingerprint property(String key, Object value) {
+
+        properties.put(key, String.valueOf(value));
+        return this;
+    }
+
+    public BuildFingerprint properties(String prefix, Map<String, String> values) {
+
+        new TreeMap<>(values).forEach((key, value) -> property(prefix + "." + key, value));
+        return this;
+    }
+
+    public String compute() throws IOException {
+
+        MessageDigest digest = newDigest();
+
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+
+            update(digest, "property:" + entry.getKey() + "=" + entry.getValue());
+        }
+
+        Path base = baseDirectory.toPath().toAbsolutePath().normalize();
+
+        List<Path> inputFiles = inputFiles(base);
+
+        for (Path file : inputFiles) {
+
+            update(digest, "file:" + base.relativize(file).toString().replace('\\', '/'));
+            update(digest, hash(file));
+        }
+
+        if (visitedReferences != null) {
+
+            visitedReferences.add(base);
+
+            for (Path file : inputFiles) {
+
+                if (isProjectFile(file)) {
+
+                    updateDependencies(digest, base, file);
+                }
+            }
+        }
+
+        for (Path parent = base.getParent(); parent != null; parent = parent.getParent()) {
+
+            for (Path file : inheritedFiles(parent)) {
+
+                update(digest, "inherited:" + file);
+                update(digest, hash(file));
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean isProjectFile(Path file) {
+
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        return RestoreMojo.PROJECT_FILE_SUFFIXES.stream().anyMatch(name::endsWith);
+    }
+
+    private void updateDependencies(MessageDigest digest, Path base, Path project) throws IOException {
+
+        Path assetsFile = project.resolveSibling(ASSETS_FILE);
+
+        if (Files.isRegularFile(assetsFile)) {
+
+            update(digest, "assets:" + base.relativize(assetsFile).toString().replace('\\', '/'));
+            update(digest, assetsHash(assetsFile));
+        }
+
+        for (Path reference : projectReferences(project)) {
+
+            Path directory = reference.getParent();
+
+            if (directory == null || directory.startsWith(base) || !visitedReferences.add(directory)) {
+
+                continue;
+            }
+
+            BuildFingerprint referenced = new BuildFingerprint(directory.toFile());
+            referenced.visitedReferences = visitedReferences;
+
+            update(digest, "reference:" + base.relativize(reference).toString().replace('\\', '/'));
+            update(digest, referenced.compute());
+        }
+    }
+
+    /**
+     * @return the absolute paths of the projects the given project file references
+     */
+    static List<Path> projectReferences(Path project) throws IOException {
+
+        Path directory = project.toAbsolutePath().normalize().getParent();
+
+        List<Path> result = new ArrayList<>();
+
+        Matcher matcher = PROJECT_REFERENCE_PATTERN.matcher(Files.readString(project, StandardCharsets.UTF_8));
+
+        while (matcher.find()) {
+
+            result.add(directory.resolve(matcher.group(1).replace('\\', '/')).normalize());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the hash of the libraries resolved in the given assets file - together with the hash of every package as
+     * installed in the package folders. Everything else in the file is derived from the project files or depends on
+     * the machine, like absolute paths.
+     */
+    static String assetsHash(Path assetsFile) throws IOException {
+
+        Object assets;
+
+        try {
+
+            assets = Json.parse(Files.readString(assetsFile, StandardCharsets.UTF_8));
+
+        } catch (IllegalArgumentException e) {
+
+            return hash(assetsFile);
+        }
+
+        if (!(assets instanceof Map<?, ?> root) || !(root.get("libraries") instanceof Map<?, ?> libraries)) {
+
+            return hash(assetsFile);
+        }
+
+        List<String> packageFolders = root.get("packageFolders") instanceof Map<?, ?> folders ?
+                folders.keySet().stream().map(String::valueOf).toList() : List.of();
+
+        SortedMap<String, Map<?, ?>> sorted = new TreeMap<>();
+
+        libraries.forEach((name, library) -> {
+
+            if (library instanceof Map<?, ?> map) {
+
+                sorted.put(String.valueOf(name), map);
+            }
+        });
+
+        MessageDigest digest = newDigest();
+
+        for (Map.Entry<String, Map<?, ?>> library : sorted.entrySet()) {
+
+            Object type = library.getValue().get("type");
+            Object path = library.getValue().get("path");
+
+            update(digest, library.getKey() + "|" + type + "|" + path + "|" + library.getValue().get("sha512"));
+
+            if ("package".equals(type) && path != null) {
+
+                update(digest, installedHash(packageFolders, String.valueOf(path)));
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the content of the hash file nuget writes next to every package it installs - e.g. {@code
+     * <folder>/my.package/1.0.0-snapshot/my.package.1.0.0-snapshot.nupkg.sha512} - empty if it is not installed
+     */
+    private static String installedHash(List<String> packageFolders, String path) throws IOException {
+
+        for (String folder : packageFolders) {
+
+            try {
+
+                Path hashFile = Path.of(folder).resolve(path).resolve(path.replace('/', '.') + ".nupkg.sha512");
+
+                if (Files.isRegularFile(hashFile)) {
+
+                    return Files.readString(hashFile, StandardCharsets.UTF_8).trim();
+                }
+
+            } catch (InvalidPathException e) {
+
+                // not a path on this machine - the package is not installed here
+            }
+        }
+
+        return "";
+    }
+
+    private List<Path> inputFiles(Path base) throws IOException {
+
+        List<Path> result = new ArrayList<>();
+
+        if (!Files.isDirectory(base)) {
+
+            return result;
+        }
+
+        Files.walkFileTree(base, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+
+                if (!directory.equals(base) && (EXCLUDED_DIRECTORIES.contains(directory.getFileName().toString()) || excludedPaths.contains(directory))) {
+
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                if (attributes.isRegularFile() && fileFilter.test(file.getFileName().toString().toLowerCase())) {
+
+                    result.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        result.sort(null);
+
+        return result;
+    }
+
+    private static List<Path> inheritedFiles(Path directory) throws IOException {
+
+        try (var files = Files.list(directory)) {
+
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> INHERITED_FILES.contains(file.getFileName().toString().toLowerCase()))
+                    .sorted()
+                    .toList();
+
+        } catch (IOException e) {
+
+            // unreadable parent directories can not contribute inputs
+            return List.of();
+        }
+    }
+
+    static String hash(Path file) throws IOException {
+
+        MessageDigest digest = newDigest();
+
+        try (InputStream inputStream = Files.newInputStream(file)) {
+
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = inputStream.read(buffer)) >= 0) {
+
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return the hash of the given text - e.g. to include credentials in a key without storing them
+     */
+    static String hash(String text) {
+
+        MessageDigest digest = newDigest();
+
+        update(digest, text);
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String text) {
+
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+
+        try {
+
+            return MessageDigest.getInstance(ALGORITHM);
+
+        } catch (NoSuchAlgorithmException e) {
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return whether the given file contains the given fingerprint
+     */
+    public static boolean matches(File file, String fingerprint) throws IOException {
+
+        return file.isFile() && Files.readString(file.toPath(), StandardCharsets.UTF_8).trim().equals(fingerprint);
+    }
+
+    public static void store(File file, String fingerprint) throws IOException {
+
+        FileUtils.forceMkdirParent(file);
+
+        Path temporary = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+
+        Files.writeString(temporary, fingerprint, StandardCharsets.UTF_8);
+        Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -5,6 +5,16 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 
 /**
  * This goal calls `dotnet build` on the current project, be that a {@code .sln}
@@ -15,6 +25,20 @@ import org.apache.maven.plugins.annotations.Parameter;
 @Mojo(name = "build", defaultPhase = LifecyclePhase.COMPILE)
 public class BuildMojo extends AbstractDotnetMojo {
 
+    public static final String FINGERPRINT_FILE_NAME = "build.fingerprint";
+    public static final String OUTPUTS_FILE_NAME = "build.outputs";
+
+    /**
+     * the key of the fingerprint of the current build in the {@link #pluginContext() plugin context} - goals packing the
+     * outputs of the build depend on it
+     */
+    static final String BUILD_FINGERPRINT_KEY = BuildMojo.class.getName() + ".fingerprint";
+
+    /**
+     * names of the directories msbuild writes its outputs to
+     */
+    public static final Set<String> OUTPUT_DIRECTORIES = Set.of("bin", "obj");
+
     /**
      * This parameter specifies which configuration will be built. Normally, at least {@code RELEASE}
      * and {@code DEBUG} are available.
@@ -22,6 +46,25 @@ public class BuildMojo extends AbstractDotnetMojo {
     @Parameter
     private String configurationName;
 
+    /**
+     * This parameter specifies whether to skip {@code dotnet build} if its inputs did not change since the last
+     * successful build. The inputs are the files of the project - except for {@code bin} and {@code obj} directories -,
+     * the {@code Directory.Build.*}, {@code Directory.Packages.props}, {@code global.json} and {@code nuget.config}
+     * files of parent directories, the properties given to {@code dotnet} and the version of the .NET SDK used. A hash
+     * of them is stored in the {@link #targetDirectory target directory} - so {@code mvn clean} always leads to a
+     * new build. The files written to {@code bin} and {@code obj} are recorded as well - if any of them is missing, e.g.
+     * after {@code git clean}, the project is built again.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.incrementalBuild")
+    private boolean incrementalBuild;
+
+    /**
+     * This parameter forces {@code dotnet build} to be called even if {@link #incrementalBuild} is enabled and the
+     * inputs did not change or a {@link #buildCacheDirectory build cache} contains an entry for them.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.forceBuild")
+    private boolean forceBuild;
+
     @Override
     public void execute() throws MojoExecutionException {
 
@@ -30,6 +73,137 @@ public class BuildMojo extends AbstractDotnetMojo {
             return;
         }
 
-        newExecutor().build(assemblyVersion, vendor, configurationName);
+        DotnetExecutor executor = newExecutor(false, isRestoreUpToDate());
+        BuildCache buildCache = buildCache();
+
+        if (!incrementalBuild && buildCache == null) {
+
+            executor.build(assemblyVersion, vendor, configurationName);
+            return;
+        }
+
+        try {
+
+            File fingerprintFile = new File(targetDirectory, FINGERPRINT_FILE_NAME);
+            File outputsFile = new File(targetDirectory, OUTPUTS_FILE_NAME);
+            String fingerprint = fingerprint(executor).compute();
+
+            pluginContext().put(BUILD_FINGERPRINT_KEY, fingerprint);
+
+            if (incrementalBuild && !forceBuild && BuildFingerprint.matches(fingerprintFile, fingerprint)) {
+
+                if (outputsExist(outputsFile)) {
+
+                    getLog().info("Inputs did not change since the last build - skipping dotnet build");
+                    return;
+                }
+
+                getLog().info("Inputs did not change since the last build, but its outputs are missing - building again");
+            }
+
+            // a failed build must never be considered up-to-date
+            for (File file : List.of(fingerprintFile, outputsFile)) {
+
+                if (file.exists() && !file.delete()) {
+
+                    throw new IOException("unable to delete " + file);
+                }
+            }
+
+            if (buildCache != null && !forceBuild && buildCache.load(fingerprint, workingDirectory.toPath())) {
+
+                getLog().info("Restored build outputs from build cache - skipping dotnet build");
+
+            } else {
+
+                executor.build(assemblyVersion, vendor, configurationName);
+
+                if (buildCache != null) {
+
+                    buildCache.store(fingerprint, workingDirectory.toPath(), buildOutputs());
+                }
+            }
+
+            if (incrementalBuild) {
+
+                Path base = workingDirectory.toPath().toAbsolutePath().normalize();
+
+                BuildFingerprint.store(outputsFile, buildOutputs().stream()
+                        .map(file -> base.relativize(file).toString().replace('\\', '/'))
+                        .collect(Collectors.joining("\n")));
+                BuildFingerprint.store(fingerprintFile, fingerprint);
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    private BuildFingerprint fingerprint(DotnetExecutor executor) throws MojoExecutionException {
+
+        return inputFingerprint(executor)
+                .property("assemblyVersion", assemblyVersion)
+                .property("vendor", vendor)
+                .property("configuration", configurationName);
+    }
+
+    /**
+     * @return whether every output recorded by the last build still exists
+     */
+    private boolean outputsExist(File outputsFile) throws IOException {
+
+        if (!outputsFile.isFile()) {
+
+            return false;
+        }
+
+        Path base = workingDirectory.toPath().toAbsolutePath().normalize();
+
+        for (String output : Files.readAllLines(outputsFile.toPath(), StandardCharsets.UTF_8)) {
+
+            if (!output.isBlank() && !Files.isRegularFile(base.resolve(output))) {
+
+                getLog().debug("build output " + output + " is missing");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private List<Path> buildOutputs() throws IOException {
+
+        Path base = workingDirectory.toPath().toAbsolutePath().normalize();
+        Path target = targetDirectory.toPath().toAbsolutePath().normalize();
+
+        try (Stream<Path> files = Files.walk(base)) {
+
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> !file.startsWith(target))
+                    .filter(file -> isBuildOutput(base.relativize(file)))
+                    .toList();
+        }
+    }
+
+    private static boolean isBuildOutput(Path relativePath) {
+
+        for (Path element : relativePath) {
+
+            String name = element.toString();
+
+            if (OUTPUT_DIRECTORIES.contains(name)) {
+
+                return true;
+            }
+
+            if (BuildFingerprint.EXCLUDED_DIRECTORIES.contains(name)) {
+
+                return false;
+            }
+        }
+
+        return false;
     }
 }
@@ -0,0 +1,51 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.logging.Logger;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * This lifecycle participant shuts down the dotnet build servers that were started by goals configured with
+ * {@code useBuildServer}. Since maven calls {@link #afterSessionEnd(MavenSession)} regardless of the outcome of the
+ * build, the servers are stopped even if the build failed.
+ */
+public class BuildServerLifecycleParticipant extends AbstractMavenLifecycleParticipant {
+
+    private Logger logger;
+
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+
+        Set<String> executables = DotnetBuildServer.registered(session);
+
+        for (String executable : executables) {
+
+            try {
+
+                logger.info("Shutting down dotnet build servers of " + executable);
+
+                int exitCode = DotnetBuildServer.shutdown(executable);
+
+                if (exitCode != 0) {
+
+                    logger.warn(executable + " build-server shutdown returned code " + exitCode);
+                }
+
+            } catch (IOException e) {
+
+                logger.warn("failed to shut down dotnet build servers of " + executable, e);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                logger.warn("interrupted while shutting down dotnet build servers of " + executable, e);
+                return;
+            }
+        }
+
+        executables.clear();
+    }
+}
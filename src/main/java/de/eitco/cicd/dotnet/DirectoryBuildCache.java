@@ -0,0 +1,283 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A {@link BuildCache} located in a - possibly shared - directory. Every entry is a zip file named after its key.
+ * Entries are written to a temporary file first and then atomically moved to their final name, so concurrent builds
+ * never see partial entries. Every time an entry is used its modification time is updated - when the cache exceeds its
+ * maximum size the least recently used entries are deleted.
+ */
+public class DirectoryBuildCache implements BuildCache {
+
+    public static final String ENTRY_SUFFIX = ".zip";
+
+    private final Path root;
+    private final long maxSizeBytes;
+    private final Log log;
+
+    /**
+     * @param root         the directory of the cache
+     * @param maxSizeBytes the maximum size of all entries - {@code 0} or less for no limit
+     */
+    public DirectoryBuildCache(Path root, long maxSizeBytes, Log log) {
+        this.root = root;
+        this.maxSizeBytes = maxSizeBytes;
+        this.log = log;
+    }
+
+    private Path entry(String key) {
+
+        return root.resolve(key.substring(0, Math.min(2, key.length()))).resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * restores the entry of the given key. The entry is extracted to a temporary directory first, so that a corrupt
+     * entry - e.g. truncated by a full disk - never leaves some of its files behind. Such an entry is deleted and
+     * treated as missing.
+     */
+    @Override
+    public boolean load(String key, Path destination) throws IOException {
+
+        Path entry = entry(key);
+
+        if (!Files.isRegularFile(entry)) {
+
+            return false;
+        }
+
+        Path target = destination.toAbsolutePath().normalize();
+        Files.createDirectories(target);
+
+        Path extracted = Files.createTempDirectory(target, ".build-cache");
+
+        try {
+
+            List<Path> files;
+
+            try {
+
+                files = extract(entry, extracted);
+
+            } catch (NoSuchFileException e) {
+
+                // evicted concurrently
+                return false;
+
+            } catch (IOException e) {
+
+                log.warn("cache entry " + entry + " is corrupt - deleting it: " + e.getMessage());
+
+                try {
+
+                    Files.deleteIfExists(entry);
+
+                } catch (IOException deleteFailure) {
+
+                    log.debug("unable to delete cache entry " + entry + ": " + deleteFailure.getMessage());
+                }
+
+                return false;
+            }
+
+            for (Path file : files) {
+
+                Path restored = target.resolve(extracted.relativize(file));
+
+                Files.createDirectories(restored.getParent());
+                Files.move(file, restored, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+        } finally {
+
+            FileUtils.deleteDirectory(extracted.toFile());
+        }
+
+        touch(entry);
+
+        return true;
+    }
+
+    /**
+     * @return the files extracted from the given entry into the given directory
+     */
+    private static List<Path> extract(Path entry, Path directory) throws IOException {
+
+        List<Path> result = new ArrayList<>();
+
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(entry))) {
+
+            for (ZipEntry zipEntry = zip.getNextEntry(); zipEntry != null; zipEntry = zip.getNextEntry()) {
+
+                Path file = directory.resolve(zipEntry.getName()).normalize();
+
+                if (!file.startsWith(directory) || file.equals(directory)) {
+
+                    throw new IOException("cache entry " + entry + " contains invalid path " + zipEntry.getName());
+                }
+
+                if (zipEntry.isDirectory()) {
+
+                    Files.createDirectories(file);
+                    continue;
+                }
+
+                Files.createDirectories(file.getParent());
+                Files.copy(zip, file, StandardCopyOption.REPLACE_EXISTING);
+
+                result.add(file);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void store(String key, Path base, Collection<Path> files) throws IOException {
+
+        Path entry = entry(key);
+
+        if (Files.exists(entry)) {
+
+            touch(entry);
+            return;
+        }
+
+        Files.createDirectories(entry.getParent());
+
+        Path temporary = Files.createTempFile(entry.getParent(), key, ".tmp");
+
+        try {
+
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(temporary))) {
+
+                for (Path file : files) {
+
+                    zip.putNextEntry(new ZipEntry(base.relativize(file).toString().replace('\\', '/')));
+
+                    try (InputStream inputStream = Files.newInputStream(file)) {
+
+                        inputStream.transferTo(zip);
+                    }
+
+                    zip.closeEntry();
+                }
+            }
+
+            try {
+
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (FileAlreadyExistsException e) {
+
+                // another build published the same entry in the meantime
+                log.debug("cache entry " + entry + " was stored concurrently");
+            }
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+
+        evict();
+    }
+
+    private static void touch(Path entry) {
+
+        try {
+
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+        } catch (IOException e) {
+
+            // the entry was evicted concurrently - it is not needed anymore anyway
+        }
+    }
+
+    /**
+     * deletes the least recently used entries until the cache does not exceed its maximum size.
+     */
+    void evict() throws IOException {
+
+        if (maxSizeBytes <= 0) {
+
+            return;
+        }
+
+        record Entry(Path path, long size, long lastUsed) {
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long totalSize = 0;
+
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(root, Files::isDirectory)) {
+
+            for (Path directory : directories) {
+
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+
+                    for (Path file : files) {
+
+                        try {
+
+                            Entry entry = new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+
+                            entries.add(entry);
+                            totalSize += entry.size();
+
+                        } catch (NoSuchFileException e) {
+
+                            // evicted concurrently
+                        }
+                    }
+                }
+            }
+        }
+
+        if (totalSize <= maxSizeBytes) {
+
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(Entry::lastUsed));
+
+        for (Entry entry : entries) {
+
+            if (totalSize <= maxSizeBytes) {
+
+                return;
+            }
+
+            try {
+
+                Files.deleteIfExists(entry.path());
+                totalSize -= entry.size();
+
+                log.debug("evicted cache entry " + entry.path() + " (" + FileUtils.byteCountToDisplaySize(entry.size()) + ")");
+
+            } catch (IOException e) {
+
+                // the entry is in use by another build on a platform that does not allow deleting open files
+                log.debug("unable to evict cache entry " + entry.path() + ": " + e.getMessage());
+            }
+        }
+    }
+}
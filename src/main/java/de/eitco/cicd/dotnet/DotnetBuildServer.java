@@ -0,0 +1,81 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.SessionData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the {@code dotnet} executables that were used with the MSBuild server and the Roslyn compiler server
+ * enabled during a maven session. The registry is stored in the session data of the repository session, since that
+ * is shared by the plugin realm the goals are executed in and the extension realm the
+ * {@link BuildServerLifecycleParticipant} lives in. Only jdk types are stored there for the same reason.
+ */
+final class DotnetBuildServer {
+
+    static final String SESSION_KEY = DotnetBuildServer.class.getName() + ".executables";
+
+    static final String MSBUILD_SERVER_VARIABLE = "DOTNET_CLI_USE_MSBUILD_SERVER";
+
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private DotnetBuildServer() {
+    }
+
+    static void register(MavenSession session, File executable) {
+
+        registered(session).add(executableName(executable));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> registered(MavenSession session) {
+
+        SessionData data = session.getRepositorySession().getData();
+
+        Set<String> executables = (Set<String>) data.get(SESSION_KEY);
+
+        if (executables != null) {
+
+            return executables;
+        }
+
+        data.set(SESSION_KEY, null, ConcurrentHashMap.newKeySet());
+
+        return (Set<String>) data.get(SESSION_KEY);
+    }
+
+    static String executableName(File executable) {
+
+        return executable == null ? (SystemUtils.IS_OS_WINDOWS ? "dotnet.exe" : "dotnet") : executable.getPath();
+    }
+
+    /**
+     * calls {@code dotnet build-server shutdown} which stops the MSBuild server, the MSBuild worker nodes as well as
+     * the Roslyn compiler server and the Razor server.
+     *
+     * @return the exit code of the shutdown command
+     */
+    static int shutdown(String executable) throws IOException, InterruptedException {
+
+        ProcessBuilder builder = new ProcessBuilder(List.of(executable, "build-server", "shutdown"));
+        builder.environment().put("DOTNET_CLI_TELEMETRY_OPTOUT", "TRUE");
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        Process process = builder.start();
+
+        if (!process.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+
+            process.destroyForcibly();
+            throw new IOException(executable + " build-server shutdown did not finish within " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+        }
+
+        return process.exitValue();
+    }
+}
@@ -2,7 +2,6 @@ package de.eitco.cicd.dotnet;
 
 import com.google.common.base.Strings;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
@@ -13,6 +12,9 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -26,38 +28,89 @@ public record DotnetExecutor(
         Map<String, String> environment,
         Map<String, String> inlineRunSettings,
         Log log,
-        boolean ignoreResult
+        boolean ignoreResult,
+        boolean useBuildServer,
+        boolean quiet,
+        int outputTailLines,
+        InvocationRecorder recorder,
+        int timeoutSeconds,
+        BooleanSupplier cancelled,
+        RetryPolicy retryPolicy,
+        boolean binaryLog,
+        boolean noRestore,
+        File nugetConfigFile
 ) {
 
     public static final String DEFAULT_NUGET_CONFIG = "default.nuget.config";
     public static final Pattern LOCALS_PATTERN = Pattern.compile("\\s*global-packages:\\s*(?<directory>.*)\\s*");
 
+    /**
+     * the message {@code dotnet nuget push --skip-duplicate} reports a package the server already has with
+     */
+    public static final Pattern SKIPPED_DUPLICATE_PATTERN = Pattern.compile("Package '.*' already exists at feed", Pattern.CASE_INSENSITIVE);
+
+    // the output of silent commands is evaluated by the plugin itself - so it is always kept
+    private static final int SILENT_OUTPUT_LINES = 100;
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 500;
+
+    private static final Map<String, String> SDK_VERSIONS = new ConcurrentHashMap<>();
+
+    private static final String BUILD_OPERATION = "build";
+    private static final String TEST_OPERATION = "test";
+    private static final String PACK_OPERATION = "pack";
+    private static final String BINARY_LOG_SUFFIX = ".binlog";
+    private static final String NO_RESTORE = "--no-restore";
+
     private static class ExecutionOptions {
         private boolean ignoreResult = false;
-        private boolean inheritIo = true;
+        private boolean silent = false;
+        private int attempt = 1;
+        private File directory = null;
+
+        private ExecutionOptions copy() {
+            ExecutionOptions result = new ExecutionOptions();
+            result.ignoreResult = ignoreResult;
+            result.silent = silent;
+            result.attempt = attempt;
+            result.directory = directory;
+            return result;
+        }
 
         public ExecutionOptions ignoreResult() {
 
-            ExecutionOptions result = new ExecutionOptions();
-            result.inheritIo = inheritIo;
+            ExecutionOptions result = copy();
             result.ignoreResult = true;
             return result;
         }
 
         public ExecutionOptions silent() {
-            ExecutionOptions result = new ExecutionOptions();
-            result.inheritIo = false;
-            result.ignoreResult = ignoreResult;
+            ExecutionOptions result = copy();
+            result.silent = true;
             return result;
         }
 
         public ExecutionOptions mergeIgnoreResult(boolean ignoreResult) {
-            ExecutionOptions result = new ExecutionOptions();
-            result.inheritIo = inheritIo;
+            ExecutionOptions result = copy();
             result.ignoreResult = ignoreResult || this.ignoreResult;
 
             return result;
         }
+
+        public ExecutionOptions attempt(int attempt) {
+            ExecutionOptions result = copy();
+            result.attempt = attempt;
+            return result;
+        }
+
+        public ExecutionOptions directory(File directory) {
+            ExecutionOptions result = copy();
+            result.directory = directory;
+            return result;
+        }
+    }
+
+    private record ExecutionResult(String command, int returnCode, ProcessOutput output) {
     }
 
     private static ExecutionOptions defaultOptions() {
@@ -65,7 +118,7 @@ public record DotnetExecutor(
         return new ExecutionOptions();
     }
 
-    private int execute(
+    private ExecutionResult execute(
             ExecutionOptions executionOptions,
             List<String> parameters,
             Set<String> obfuscation,
@@ -75,41 +128,125 @@ public record DotnetExecutor(
 
         ProcessBuilder builder = new ProcessBuilder();
 
-        builder.directory(workingDirectory);
+        builder.directory(executionOptions.directory != null ? executionOptions.directory : workingDirectory);
 
         List<String> command = buildCommand(parameters, propertyOverrides, inlineRunSettings);
 
         builder.command(command);
 
-        if (executionOptions.inheritIo) {
+        optOut(builder);
 
-            builder.inheritIO();
-        }
+        if (useBuildServer && propertyOverrides != null) {
 
-        optOut(builder);
+            builder.environment().put(DotnetBuildServer.MSBUILD_SERVER_VARIABLE, "1");
+        }
 
         environment.forEach((key, value) -> builder.environment().put(key, value));
 
         try {
 
-            log.info("Executing command: " + presentCommand(command, obfuscation));
+            String presentedCommand = presentCommand(command, obfuscation);
+
+            log.info("Executing command: " + presentedCommand);
+
+            InvocationRecorder.Invocation invocation = recorder.start(operationOf(parameters), presentedCommand, executionOptions.attempt);
 
             Process process = builder.start();
 
-            int returnCode = process.waitFor();
+            ProcessOutput output = executionOptions.silent ?
+                    new ProcessOutput(log, Math.max(outputTailLines, SILENT_OUTPUT_LINES), false) :
+                    new ProcessOutput(log, outputTailLines, !quiet);
+            output.attach(process, "dotnet-" + parameters.get(0));
+
+            ProcessTree.register(process);
+
+            int returnCode = -1;
+
+            try {
+
+                String cancellation = waitFor(process);
+
+                if (cancellation != null) {
+
+                    log.error("process " + presentedCommand + " " + cancellation);
+                    ProcessTree.destroy(process, log, obfuscation);
+
+                    if (quiet) {
+
+                        output.report(true);
+                    }
+
+                    throw new MojoExecutionException("process " + presentedCommand + " " + cancellation);
+                }
+
+                returnCode = process.exitValue();
+
+                output.await();
+
+            } catch (InterruptedException e) {
+
+                log.error("interrupted while waiting for process " + presentedCommand);
+                ProcessTree.destroy(process, log, obfuscation);
+                throw e;
+
+            } finally {
+
+                ProcessTree.unregister(process);
+                invocation.finish(returnCode);
+            }
+
+            if (returnCode != 0 && (quiet || executionOptions.silent)) {
+
+                output.report(!executionOptions.silent);
+            }
 
             if (returnCode != 0 && !executionOptions.ignoreResult) {
 
-                throw new MojoExecutionException("process " + presentCommand(command, obfuscation) + " returned code " + returnCode);
+                throw new MojoExecutionException("process " + presentedCommand + " returned code " + returnCode);
             }
 
-            return returnCode;
+            return new ExecutionResult(presentedCommand, returnCode, output);
 
         } catch (IOException | InterruptedException e) {
             throw new MojoExecutionException(e);
         }
     }
 
+    /**
+     * waits for the given process to terminate, the configured timeout to elapse or the reactor build to fail.
+     *
+     * @return {@code null} if the process terminated, otherwise the reason to cancel it
+     */
+    private String waitFor(Process process) throws InterruptedException {
+
+        long start = System.nanoTime();
+
+        while (!process.waitFor(WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+
+            if (timeoutSeconds > 0 && System.nanoTime() - start > TimeUnit.SECONDS.toNanos(timeoutSeconds)) {
+
+                return "timed out after " + timeoutSeconds + " seconds";
+            }
+
+            if (cancelled.getAsBoolean()) {
+
+                return "was cancelled since the reactor build failed";
+            }
+        }
+
+        return null;
+    }
+
+    private static String operationOf(List<String> parameters) {
+
+        if (parameters.size() > 1 && "nuget".equals(parameters.get(0))) {
+
+            return parameters.get(0) + " " + parameters.get(1);
+        }
+
+        return parameters.get(0);
+    }
+
     private static void optOut(ProcessBuilder builder) {
         builder.environment().put("DOTNET_CLI_TELEMETRY_OPTOUT", "TRUE");
     }
@@ -137,7 +274,18 @@ public record DotnetExecutor(
             Map<String, String> properties = new HashMap<>(customProperties);
             properties.putAll(propertyOverrides);
 
+            if (nugetConfigFile != null) {
+
+                properties.put("RestoreConfigFile", nugetConfigFile.getAbsolutePath());
+            }
+
             properties.forEach((key, value) -> command.add("-p:" + key + "=" + value));
+
+            if (useBuildServer) {
+
+                command.add("-nodeReuse:true");
+                command.add("-p:UseSharedCompilation=true");
+            }
         }
 
         if (inlineRunSettings != null && !inlineRunSettings.isEmpty()) {
@@ -153,8 +301,8 @@ public record DotnetExecutor(
         command.add(executable == null ? (SystemUtils.IS_OS_WINDOWS ? "dotnet.exe" : "dotnet") : executable.getPath());
     }
 
-    private void retry(
-            int times,
+    private ExecutionResult retry(
+            String operation,
             ExecutionOptions executionOptions,
             List<String> parameters,
             Set<String> obfuscation,
@@ -162,17 +310,47 @@ public record DotnetExecutor(
             Map<String, String> inlineRunSettings
     ) throws MojoExecutionException {
 
-        for (int index = 0; index < times; index++) {
+        int retries = retryPolicy.retries(operation);
 
-            int returnCode = execute(executionOptions.ignoreResult(), parameters, obfuscation, propertyOverrides, inlineRunSettings);
+        for (int attempt = 1; attempt <= retries; attempt++) {
 
-            if (returnCode == 0) {
+            ExecutionResult result = execute(executionOptions.ignoreResult().attempt(attempt), parameters, obfuscation, propertyOverrides, inlineRunSettings);
 
-                return;
+            if (result.returnCode() == 0) {
+
+                return result;
+            }
+
+            RetryPolicy.FailureClass failureClass = retryPolicy.classify(result.output().tail());
+
+            if (!failureClass.retryable()) {
+
+                log.info("not retrying " + operation + " since its failure is classified as " + failureClass);
+
+                if (executionOptions.ignoreResult) {
+
+                    return result;
+                }
+
+                throw new MojoExecutionException("process " + result.command() + " returned code " + result.returnCode());
+            }
+
+            long delay = retryPolicy.delayMillis(attempt);
+
+            log.warn(operation + " failed (" + failureClass + ") - retrying in " + delay + "ms");
+
+            try {
+
+                Thread.sleep(delay);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException(e);
             }
         }
 
-        execute(executionOptions, parameters, obfuscation, propertyOverrides, inlineRunSettings);
+        return execute(executionOptions.attempt(retries + 1), parameters, obfuscation, propertyOverrides, inlineRunSettings);
     }
 
     public void build(
@@ -197,7 +375,23 @@ public record DotnetExecutor(
             parameters.add("--configuration=" + configuration);
         }
 
-        retry(1, defaultOptions(), parameters, Set.of(), propertyOverrides, null);
+        if (noRestore) {
+            parameters.add(NO_RESTORE);
+        }
+
+        if (binaryLog) {
+            parameters.add(binaryLogParameter(BUILD_OPERATION));
+            propertyOverrides.put("ReportAnalyzer", "true");
+        }
+
+        try {
+
+            retry(RetryPolicy.BUILD, defaultOptions(), parameters, Set.of(), propertyOverrides, null);
+
+        } finally {
+
+            analyzeBinaryLog(BUILD_OPERATION);
+        }
     }
 
     public void pack(
@@ -230,23 +424,182 @@ public record DotnetExecutor(
         parameters.add("--output");
         parameters.add(targetDirectory.getPath());
 
-        execute(defaultOptions(), parameters, Set.of(), propertyOverrides, null);
+        if (noRestore) {
+            parameters.add(NO_RESTORE);
+        }
+
+        if (binaryLog) {
+            parameters.add(binaryLogParameter(PACK_OPERATION));
+        }
+
+        try {
+
+            execute(defaultOptions(), parameters, Set.of(), propertyOverrides, null);
+
+        } finally {
+
+            analyzeBinaryLog(PACK_OPERATION);
+        }
+    }
+
+    public void restore(boolean lockedMode) throws MojoExecutionException {
+
+        List<String> parameters = new ArrayList<>(List.of("restore"));
+
+        if (lockedMode) {
+            parameters.add("--locked-mode");
+        }
+
+        // the version is part of the assets file - restoring without it would make the next build restore again
+        retry(RetryPolicy.RESTORE, defaultOptions(), parameters, Set.of(), Map.of("Version", version), null);
     }
 
     public int test(String logger, String testResultDirectory) throws MojoExecutionException {
 
-        return execute(
-                defaultOptions().mergeIgnoreResult(ignoreResult),
-                List.of("test", "--no-build", "--logger", logger, "--results-directory", testResultDirectory),
-                Set.of(),
-                Map.of(),
-                inlineRunSettings
-        );
+        return test(logger, testResultDirectory, null, TEST_OPERATION);
+    }
+
+    /**
+     * @param project   the project to test - {@code null} for the project or solution in the working directory
+     * @param operation the name of the operation, naming its binary log - distinct for concurrently running tests
+     */
+    public int test(String logger, String testResultDirectory, File project, String operation) throws MojoExecutionException {
+
+        List<String> parameters = new ArrayList<>(List.of("test"));
+
+        if (project != null) {
+            parameters.add(project.getPath());
+        }
+
+        parameters.addAll(List.of("--no-build", "--logger", logger, "--results-directory", testResultDirectory));
+
+        if (noRestore) {
+            parameters.add(NO_RESTORE);
+        }
+
+        if (binaryLog) {
+            parameters.add(binaryLogParameter(operation));
+        }
+
+        try {
+
+            return execute(
+                    defaultOptions().mergeIgnoreResult(ignoreResult),
+                    parameters,
+                    Set.of(),
+                    Map.of(),
+                    inlineRunSettings
+            ).returnCode();
+
+        } finally {
+
+            analyzeBinaryLog(operation);
+        }
+    }
+
+    private File binaryLogFile(String operation) {
+
+        return new File(targetDirectory, operation + BINARY_LOG_SUFFIX);
+    }
+
+    private File textLogFile(String operation) {
+
+        return new File(targetDirectory, operation + "-binlog.log");
+    }
+
+    private File binaryLogReportFile(String operation) {
+
+        return new File(targetDirectory, operation + "-binlog-report.txt");
+    }
+
+    /**
+     * @return the parameter making msbuild write the binary log of the given operation - any log of an earlier run is
+     * deleted, so that a command failing before writing its log is not reported with the log of its predecessor
+     */
+    private String binaryLogParameter(String operation) throws MojoExecutionException {
+
+        try {
+
+            FileUtils.forceMkdir(targetDirectory);
+
+            Files.deleteIfExists(binaryLogFile(operation).toPath());
+            Files.deleteIfExists(textLogFile(operation).toPath());
+            Files.deleteIfExists(binaryLogReportFile(operation).toPath());
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+
+        return "-bl:" + binaryLogFile(operation).getPath();
     }
 
-    public void push(String apiKey, String repository) throws MojoExecutionException {
+    /**
+     * replays the binary log of the given operation into a diagnostic text log - msbuild itself is used to read the
+     * binary log, since its format is specific to the msbuild version - and writes a report of the slowest project
+     * evaluations, projects, targets, tasks and analyzers as well as the reasons targets were built.
+     */
+    private void analyzeBinaryLog(String operation) {
+
+        if (!binaryLog) {
+
+            return;
+        }
+
+        File binaryLogFile = binaryLogFile(operation);
 
-        List<String> parameters = new ArrayList<>(List.of("nuget", "push", targetDirectory.getPath() + "/**.nupkg"));
+        if (!binaryLogFile.isFile()) {
+
+            log.warn("binary log " + binaryLogFile + " was not written");
+            return;
+        }
+
+        File textLog = textLogFile(operation);
+        File reportFile = binaryLogReportFile(operation);
+
+        try {
+
+            List<String> parameters = List.of(
+                    "msbuild",
+                    binaryLogFile.getPath(),
+                    "-noconlog",
+                    "-flp:logfile=" + textLog.getPath() + ";verbosity=diagnostic;performancesummary"
+            );
+
+            ExecutionResult result = execute(defaultOptions().silent().ignoreResult(), parameters, Set.of(), null, null);
+
+            if (result.returnCode() != 0 || !textLog.isFile()) {
+
+                log.warn("failed to replay binary log " + binaryLogFile);
+                return;
+            }
+
+            BinaryLogReport report = BinaryLogReport.parse(textLog.toPath());
+            report.write(reportFile.toPath(), "dotnet " + operation + " in " + workingDirectory.getPath(), BinaryLogReport.DEFAULT_ENTRIES);
+
+            log.info("slowest targets of dotnet " + operation + ":");
+            report.slowestTargets(5).forEach(entry -> log.info("  " + entry.millis() + " ms  " + entry.name()));
+            log.info("binary log report written to " + reportFile);
+
+        } catch (MojoExecutionException | IOException e) {
+
+            log.warn("failed to analyze binary log " + binaryLogFile, e);
+        }
+    }
+
+    /**
+     * pushes a single package - retrying transient failures as configured for {@link RetryPolicy#PUSH}. With an
+     * {@link #nugetConfigFile isolated configuration}, {@code dotnet nuget push} - which has no option to choose a
+     * configuration file - is called in the directory of that configuration, so that the credentials of the sources
+     * registered there are used.
+     *
+     * @param skipDuplicate whether to consider a package the server already has as pushed successfully
+     * @return {@code true} if the package was pushed, {@code false} if the server already had it - or the failure was
+     * ignored
+     */
+    public boolean push(File nupkg, String apiKey, String repository, boolean skipDuplicate) throws MojoExecutionException {
+
+        List<String> parameters = new ArrayList<>(List.of("nuget", "push", nupkg.getAbsolutePath()));
 
         if (apiKey != null) {
             parameters.add("--api-key");
@@ -258,7 +611,20 @@ public record DotnetExecutor(
             parameters.add(repository);
         }
 
-        execute(defaultOptions().mergeIgnoreResult(ignoreResult), parameters, Optional.ofNullable(apiKey).stream().collect(Collectors.toSet()), null, null);
+        if (skipDuplicate) {
+            parameters.add("--skip-duplicate");
+        }
+
+        ExecutionOptions options = defaultOptions().mergeIgnoreResult(ignoreResult);
+
+        if (nugetConfigFile != null) {
+
+            options = options.directory(nugetConfigFile.getAbsoluteFile().getParentFile());
+        }
+
+        ExecutionResult result = retry(RetryPolicy.PUSH, options, parameters, Optional.ofNullable(apiKey).stream().collect(Collectors.toSet()), null, null);
+
+        return result.returnCode() == 0 && result.output().tail().stream().noneMatch(line -> SKIPPED_DUPLICATE_PATTERN.matcher(line).find());
     }
 
     public enum NugetConfigLocation {
@@ -266,28 +632,158 @@ public record DotnetExecutor(
         PROJECT, USER, SYSTEM
     }
 
+    /**
+     * A nuget source to register.
+     *
+     * @param location the configuration to register the source in - {@code null} for the configuration nuget would
+     *                 choose when no config file is given: the closest one already defining the source, otherwise the
+     *                 closest one found in the working directory and its parents or, if there is none, the user
+     *                 configuration
+     */
+    public record NugetSource(String name, String url, String username, String password, NugetConfigLocation location) {
+
+        public NugetSource {
+            Objects.requireNonNull(name);
+            Objects.requireNonNull(url);
+        }
+    }
+
+    /**
+     * registers all the given sources, editing the nuget configuration files directly instead of calling
+     * {@code dotnet nuget update source} and {@code dotnet nuget add source} for every source. Every configuration file
+     * affected is written at most once. Only sources with a password on windows are still registered using
+     * {@code dotnet}, since nuget encrypts passwords there. If this executor uses an
+     * {@link #nugetConfigFile isolated configuration}, all sources are registered there, regardless of their location.
+     */
+    public void upsertNugetSources(Collection<NugetSource> sources) throws MojoExecutionException {
+
+        Map<File, List<NugetSource>> sourcesByFile = new LinkedHashMap<>();
+
+        for (NugetSource source : sources) {
+
+            File configFile = nugetConfigFile != null ? nugetConfigFile :
+                    source.location() != null ? getConfigFile(source.location()) : findConfigFile(source.name());
+
+            if (source.password() != null && SystemUtils.IS_OS_WINDOWS) {
+
+                upsertNugetSource(source.url(), source.name(), source.username(), source.password(), configFile);
+                continue;
+            }
+
+            sourcesByFile.computeIfAbsent(configFile.getAbsoluteFile(), key -> new ArrayList<>()).add(source);
+        }
+
+        try {
+
+            byte[] template = defaultNugetConfig();
+
+            for (Map.Entry<File, List<NugetSource>> entry : sourcesByFile.entrySet()) {
+
+                NugetConfig.Modification modification = config -> {
+
+                    for (NugetSource source : entry.getValue()) {
+
+                        config.upsertSource(source.name(), source.url(), source.username(), source.password());
+                    }
+                };
+
+                // the isolated configuration is generated from scratch, so sources removed from the pom vanish as well
+                boolean changed = nugetConfigFile != null ?
+                        NugetConfig.generate(entry.getKey().toPath(), template, modification) :
+                        NugetConfig.update(entry.getKey().toPath(), template, modification);
+
+                log.debug((changed ? "updated " : "no changes to ") + entry.getKey() + " for sources " +
+                        entry.getValue().stream().map(NugetSource::name).collect(Collectors.joining(", ")));
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    private File findConfigFile(String sourceName) throws MojoExecutionException {
+
+        List<File> candidates = new ArrayList<>();
+
+        for (File directory = workingDirectory.getAbsoluteFile(); directory != null; directory = directory.getParentFile()) {
+
+            File configFile = NugetConfig.findIn(directory);
+
+            if (configFile != null) {
+
+                candidates.add(configFile);
+            }
+        }
+
+        File userConfig = getConfigFile(NugetConfigLocation.USER);
+
+        try {
+
+            for (File candidate : candidates) {
+
+                if (NugetConfig.read(candidate.toPath()).getSource(sourceName) != null) {
+
+                    return candidate;
+                }
+            }
+
+            if (userConfig.isFile() && NugetConfig.read(userConfig.toPath()).getSource(sourceName) != null) {
+
+                return userConfig;
+            }
+
+            if (!candidates.isEmpty()) {
+
+                return candidates.get(0);
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+
+        return userConfig;
+    }
+
+    private static byte[] defaultNugetConfig() throws IOException {
+
+        try (InputStream resourceAsStream = DotnetExecutor.class.getClassLoader().getResourceAsStream(DEFAULT_NUGET_CONFIG)) {
+
+            if (resourceAsStream == null) {
+
+                throw new IOException("resource " + DEFAULT_NUGET_CONFIG + " not found");
+            }
+
+            return resourceAsStream.readAllBytes();
+        }
+    }
+
     public void upsertNugetSource(String url, String sourceName, String username, String apiToken, NugetConfigLocation configLocation) throws MojoExecutionException {
 
+        upsertNugetSource(url, sourceName, username, apiToken, nugetConfigFile != null ? nugetConfigFile : getConfigFile(configLocation));
+    }
+
+    private void upsertNugetSource(String url, String sourceName, String username, String apiToken, File configFile) throws MojoExecutionException {
+
         Objects.requireNonNull(url);
         Objects.requireNonNull(sourceName);
 
         Set<String> obfuscation = apiToken != null ? Set.of(apiToken) : Set.of();
 
-        File configFile = getConfigFile(configLocation);
-
         if (configFile != null) {
 
             enforceConfigFileExists(configFile);
         }
 
-        List<String> updateParameters = getUpsertParameters(username, apiToken, configLocation, "nuget", "update", "source", sourceName, "--source", url);
+        List<String> updateParameters = getUpsertParameters(username, apiToken, configFile, "nuget", "update", "source", sourceName, "--source", url);
 
-        int result = execute(defaultOptions().ignoreResult(), updateParameters, obfuscation, null, null);
+        int result = execute(defaultOptions().silent().ignoreResult(), updateParameters, obfuscation, null, null).returnCode();
 
         if (result != 0) {
 
-            List<String> addParameters = getUpsertParameters(username, apiToken, configLocation, "nuget", "add", "source", url, "--name", sourceName);
-            execute(defaultOptions(), addParameters, obfuscation, null, null);
+            List<String> addParameters = getUpsertParameters(username, apiToken, configFile, "nuget", "add", "source", url, "--name", sourceName);
+            retry(RetryPolicy.UPSERT_NUGET_SOURCE, defaultOptions(), addParameters, obfuscation, null, null);
         }
     }
 
@@ -318,7 +814,7 @@ public record DotnetExecutor(
 
     }
 
-    private static File getConfigFile(NugetConfigLocation configLocation) {
+    static File getConfigFile(NugetConfigLocation configLocation) {
 
         if (configLocation == null) {
 
@@ -366,12 +862,10 @@ public record DotnetExecutor(
         throw new IllegalStateException();
     }
 
-    private static List<String> getUpsertParameters(String userName, String apiToken, NugetConfigLocation configLocation, String... firstParameters) {
+    private static List<String> getUpsertParameters(String userName, String apiToken, File configFile, String... firstParameters) {
 
         List<String> parameters = new ArrayList<>(List.of(firstParameters));
 
-        File configFile = getConfigFile(configLocation);
-
         if (configFile != null) {
 
             parameters.add("--configfile");
@@ -401,48 +895,65 @@ public record DotnetExecutor(
 
     public void clean() throws MojoExecutionException {
 
-        retry(1, defaultOptions().ignoreResult(), List.of("clean"), Set.of(), Map.of("Version", version), null);
+        retry(RetryPolicy.CLEAN, defaultOptions().ignoreResult(), List.of("clean"), Set.of(), Map.of("Version", version), null);
     }
 
-    public String getLocalArtifactCache() throws MojoExecutionException {
+    /**
+     * @return the version of the sdk {@code dotnet} resolves to in the working directory - which depends on the
+     * executable as well as on a {@code global.json} file that might be present.
+     */
+    public String sdkVersion() throws MojoExecutionException {
 
-        ProcessBuilder builder = new ProcessBuilder();
-        optOut(builder);
+        String key = DotnetBuildServer.executableName(executable) + "@" + workingDirectory.getAbsolutePath();
 
-        prepareCommand(builder.command());
-        builder.command().addAll(List.of("nuget", "locals", "global-packages", "--list"));
+        String cached = SDK_VERSIONS.get(key);
 
-        try {
+        if (cached != null) {
 
-            Process process = builder.start();
+            return cached;
+        }
 
-            int exitCode = process.waitFor();
+        ExecutionResult result = execute(defaultOptions().silent(), List.of("--version"), Set.of(), null, null);
 
-            if (exitCode != 0) {
+        List<String> output = result.output().standardOutput();
 
-                String errorOut = IOUtils.toString(process.getErrorStream(), StandardCharsets.UTF_8);
-                String stdOut = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
-                log.error(stdOut + "\n" + errorOut);
+        if (output.isEmpty()) {
 
-                throw new MojoExecutionException("Cannot get nuget cache for global packages - process exited with code " + exitCode);
-            }
+            throw new MojoExecutionException("dotnet --version did not report a version");
+        }
 
-            String stdOut = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+        String sdkVersion = output.get(output.size() - 1).trim();
 
-            Matcher matcher = LOCALS_PATTERN.matcher(stdOut);
+        SDK_VERSIONS.put(key, sdkVersion);
 
-            if (!matcher.matches()) {
+        return sdkVersion;
+    }
 
-                throw new MojoExecutionException("Cannot get nuget cache for global packages - output does not match expected pattern: " + stdOut);
-            }
+    public String getLocalArtifactCache() throws MojoExecutionException {
 
-            return matcher.group("directory");
+        ExecutionResult result = execute(defaultOptions().silent().ignoreResult(), List.of("nuget", "locals", "global-packages", "--list"), Set.of(), null, null);
 
+        if (result.returnCode() != 0) {
 
-        } catch (IOException | InterruptedException e) {
+            log.error(String.join("\n", result.output().tail()));
 
-            throw new MojoExecutionException(e);
+            throw new MojoExecutionException("Cannot get nuget cache for global packages - process exited with code " + result.returnCode());
         }
+
+        List<String> stdOut = result.output().standardOutput();
+
+        // stderr noise - like first run or update notices - must not spoil the line we are looking for
+        for (String line : stdOut) {
+
+            Matcher matcher = LOCALS_PATTERN.matcher(line);
+
+            if (matcher.matches()) {
+
+                return matcher.group("directory").trim();
+            }
+        }
+
+        throw new MojoExecutionException("Cannot get nuget cache for global packages - output does not match expected pattern: " + String.join("\n", stdOut));
     }
 
 }
\ No newline at end of file
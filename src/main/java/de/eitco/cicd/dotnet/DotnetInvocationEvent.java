@@ -0,0 +1,34 @@
+package de.eitco.cicd.dotnet;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event spanning the execution of one {@code dotnet} process.
+ */
+@Name("de.eitco.cicd.dotnet.Invocation")
+@Label("dotnet Invocation")
+@Description("The execution of a dotnet process by the dotnet maven plugin")
+@Category({"Maven", "dotnet"})
+@StackTrace(false)
+class DotnetInvocationEvent extends Event {
+
+    @Label("Module")
+    String module;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Command")
+    String command;
+
+    @Label("Exit Code")
+    int exitCode;
+
+    @Label("Attempt")
+    int attempt;
+}
@@ -6,11 +6,14 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.settings.Server;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * This goal registers nuget source repositories. A special one that helps mimic mavens local repository
- * and additionally all repositories that are configured.
+ * and additionally all repositories that are configured. In a reactor build the sources are registered only once per
+ * session: modules with the same sources and nuget configuration files reuse the registration of the first one.
  */
 @Mojo(name = "initialize", defaultPhase = LifecyclePhase.INITIALIZE)
 public class InitializeMojo extends AbstractDotnetMojo {
@@ -25,11 +28,11 @@ public class InitializeMojo extends AbstractDotnetMojo {
 
         DotnetExecutor dotnetExecutor = newExecutor();
 
-        createLocalNugetRepositoryDirectory();
-
         File localNugetRepository = getUnresolvedLocalNugetRepositoryDirectory();
 
-        dotnetExecutor.upsertNugetSource(localNugetRepository.getPath(), localMavenNugetRepositoryName, null, null, DotnetExecutor.NugetConfigLocation.USER);
+        List<DotnetExecutor.NugetSource> sources = new ArrayList<>();
+
+        sources.add(new DotnetExecutor.NugetSource(localMavenNugetRepositoryName, localNugetRepository.getPath(), null, null, DotnetExecutor.NugetConfigLocation.USER));
 
         for (Map.Entry<String, String> entry : nugetSources.entrySet()) {
             String key = entry.getKey();
@@ -39,13 +42,75 @@ public class InitializeMojo extends AbstractDotnetMojo {
 
             if (server == null) {
 
-                dotnetExecutor.upsertNugetSource(value, key, null, null, null);
+                sources.add(new DotnetExecutor.NugetSource(key, value, null, null, null));
 
             } else {
 
-                dotnetExecutor.upsertNugetSource(value, key, decrypt(server.getUsername()), decrypt(server.getPassword()), null);
+                sources.add(new DotnetExecutor.NugetSource(key, value, decrypt(server.getUsername()), decrypt(server.getPassword()), null));
+            }
+        }
+
+        String fingerprint = fingerprint(sources);
+
+        boolean[] registered = {false};
+
+        SessionCache.get(session, "nuget-sources:" + fingerprint, () -> {
+
+            createLocalNugetRepositoryDirectory();
+            dotnetExecutor.upsertNugetSources(sources);
+
+            registered[0] = true;
+            return fingerprint;
+        });
+
+        if (!registered[0]) {
+
+            getLog().info("Nuget sources were already registered by another module of this build");
+        }
+    }
+
+    /**
+     * @return a hash of everything the registration of the given sources depends on: the sources - with hashes of
+     * their credentials - and the nuget configuration files they are registered in. Sources registered without an
+     * explicit location end up in the closest configuration file, so the files present in the working directory and
+     * its parents are part of the hash - but not their content, since that is what the registration changes.
+     */
+    private String fingerprint(List<DotnetExecutor.NugetSource> sources) {
+
+        StringBuilder result = new StringBuilder("local=").append(getResolvedNugetRepoDirectory().getAbsolutePath());
+
+        File isolatedNugetConfigFile = getIsolatedNugetConfigFile();
+
+        if (isolatedNugetConfigFile != null) {
+
+            result.append("\nisolated=").append(isolatedNugetConfigFile.getAbsolutePath());
+        }
+
+        for (DotnetExecutor.NugetSource source : sources) {
+
+            result.append("\nsource=").append(source.name())
+                    .append('|').append(source.url())
+                    .append('|').append(source.location())
+                    .append('|').append(source.username() == null ? "" : BuildFingerprint.hash(source.username()))
+                    .append('|').append(source.password() == null ? "" : BuildFingerprint.hash(source.password()));
+        }
+
+        for (DotnetExecutor.NugetConfigLocation location : DotnetExecutor.NugetConfigLocation.values()) {
+
+            result.append("\n").append(location).append('=').append(DotnetExecutor.getConfigFile(location).getAbsolutePath());
+        }
+
+        for (File directory = workingDirectory.getAbsoluteFile(); directory != null; directory = directory.getParentFile()) {
+
+            File configFile = NugetConfig.findIn(directory);
+
+            if (configFile != null) {
+
+                result.append("\nconfig=").append(configFile.getAbsolutePath());
             }
         }
+
+        return BuildFingerprint.hash(result.toString());
     }
 
 }
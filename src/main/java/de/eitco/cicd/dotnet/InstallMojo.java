@@ -1,26 +1,43 @@
 package de.eitco.cicd.dotnet;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 
 /**
  * This goal assumes the builds delivery artifacts to be located in the directory denoted by the goals
  * `targetDirectory` parameter. It will simply copy all *.nupkg files located there to directory configured
- * to be the local nuget directory.
+ * to be the local nuget directory. Packages whose content did not change since they were last installed - as recorded
+ * in their {@code .sha512} file - are skipped. Additionally, every package is expanded into nuget's global packages
+ * folder, so that restoring projects depending on it does not need to extract it again.
  */
 @Mojo(name = "install", defaultPhase = LifecyclePhase.INSTALL)
 public class InstallMojo extends AbstractDotnetMojo {
 
-    public static final String NUPKG_SUFFIX = ".nupkg";
-
-    private static File globalsCacheDirectory;
+    public static final String NUPKG_SUFFIX = NugetPackage.NUPKG_SUFFIX;
+
+    /**
+     * This parameter specifies whether to hard link packages into the local nuget repository instead of copying them.
+     * This saves io for large packages, but since {@code dotnet pack} overwrites its packages in place, a package
+     * packed again changes in the local repository as well - before it is installed. If the file system does not
+     * support hard links, packages are copied.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.linkPackages")
+    private boolean linkPackages;
+
+    /**
+     * This parameter specifies whether to install packages in the hierarchical layout nuget uses for local feeds -
+     * {@code <id>/<version>/<id>.<version>.nupkg} - instead of copying them into the root directory of the local
+     * repository. Nuget needs to read every package of a flat feed to resolve a package, so with many packages
+     * installed the hierarchical layout is much faster. Since nuget treats a feed with any package in its root
+     * directory as flat, existing packages are migrated to the hierarchical layout automatically.
+     */
+    @Parameter(defaultValue = "true", property = "dotnet.hierarchicalLocalRepository")
+    private boolean hierarchicalLocalRepository;
 
     @Override
     public void execute() throws MojoExecutionException {
@@ -44,47 +61,69 @@ public class InstallMojo extends AbstractDotnetMojo {
         }
 
         File localNugetRepository = createLocalNugetRepositoryDirectory();
+        LocalNugetRepository repository = new LocalNugetRepository(localNugetRepository.toPath(), getLog());
+        PackageInstaller installer = new PackageInstaller(linkPackages, getLog());
+
+        if (hierarchicalLocalRepository) {
+
+            migrateFlatPackages(repository);
+        }
 
         for (File file : files) {
 
             try {
 
-                File targetFile = new File(localNugetRepository, file.getName());
+                String checksum = PackageInstaller.checksum(file.toPath());
+                NugetPackage nugetPackage = NugetPackage.read(file.toPath());
 
-                getLog().info("installing " + targetFile.getAbsolutePath());
-                Files.copy(file.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                if (hierarchicalLocalRepository) {
 
+                    getLog().info("installing " + nugetPackage.directoryIn(repository.root()));
 
-                getLog().debug("get package id for  " + file.getName() + " project version is " + projectVersion);
-                String packageId = file.getName().substring(0, file.getName().length() - NUPKG_SUFFIX.length() - projectVersion.length() - 1);
+                    repository.install(nugetPackage, checksum, installer);
 
-                File cacheDirectory = getGlobalsCacheDirectory();
+                } else {
 
-                File cacheEntry = new File(new File(cacheDirectory, packageId), projectVersion);
-                getLog().debug("cache entry for " + file.getName() + " is " + cacheEntry.getAbsolutePath());
+                    File targetFile = new File(localNugetRepository, file.getName());
 
-                if (cacheEntry.isDirectory()) {
+                    getLog().info("installing " + targetFile.getAbsolutePath());
 
-                    getLog().debug("deleting cache entry " + cacheEntry.getAbsolutePath());
-
-                    FileUtils.deleteDirectory(cacheEntry);
+                    installer.install(file.toPath(), targetFile.toPath(), checksum);
                 }
 
+                // expanding the package into the global packages folder makes the next restore of a dependent project
+                // a cache hit - instead of deleting the outdated entry and having every restore extract it again
+                nugetPackage.expandInto(getGlobalPackagesDirectory().toPath(), checksum, localNugetRepository.getAbsolutePath(), getLog());
+
             } catch (IOException e) {
 
                 throw new MojoExecutionException(e);
             }
         }
+
+        if (purgeLocalRepository && hierarchicalLocalRepository) {
+
+            SessionCache.get(session, "purge-local:" + repository.root(), () -> PurgeLocalMojo.purge(repository, purgePolicy(), getGlobalPackagesDirectory(), getLog()));
+        }
     }
 
-    private File getGlobalsCacheDirectory() throws MojoExecutionException {
+    private void migrateFlatPackages(LocalNugetRepository repository) throws MojoExecutionException {
 
-        if (globalsCacheDirectory != null) {
+        try {
 
-            return globalsCacheDirectory;
-        }
+            if (repository.flatPackages().isEmpty()) {
+
+                return;
+            }
 
-        return globalsCacheDirectory = new File(newExecutor().getLocalArtifactCache());
+            int migrated = repository.migrate();
+
+            getLog().info("migrated " + migrated + " packages of " + repository.root() + " to the hierarchical layout");
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
     }
 
 }
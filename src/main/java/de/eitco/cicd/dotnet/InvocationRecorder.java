@@ -0,0 +1,150 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records every {@code dotnet} process launched as a {@link DotnetInvocationEvent flight recorder event} and -
+ * if configured - as an entry in a json timeline file. The timeline file contains a json array, which is extended by
+ * one object per invocation.
+ */
+class InvocationRecorder {
+
+    public static final String TIMELINE_FILE_NAME = "timeline.json";
+
+    private static final Map<String, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private final String module;
+    private final File timelineFile;
+    private final Log log;
+
+    /**
+     * @param module       the name of the module the invocations belong to
+     * @param timelineFile the timeline file to write - {@code null} to only emit flight recorder events
+     * @param log          the log to report problems to
+     */
+    InvocationRecorder(String module, File timelineFile, Log log) {
+        this.module = module;
+        this.timelineFile = timelineFile;
+        this.log = log;
+    }
+
+    class Invocation {
+
+        private final DotnetInvocationEvent event = new DotnetInvocationEvent();
+        private final Instant start = Instant.now();
+        private final long startNanos = System.nanoTime();
+
+        private Invocation(String operation, String command, int attempt) {
+
+            event.module = module;
+            event.operation = operation;
+            event.command = command;
+            event.attempt = attempt;
+            event.begin();
+        }
+
+        void finish(int exitCode) {
+
+            event.end();
+            event.exitCode = exitCode;
+            event.commit();
+
+            long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+            append(this, exitCode, durationMillis);
+        }
+    }
+
+    Invocation start(String operation, String command, int attempt) {
+
+        return new Invocation(operation, command, attempt);
+    }
+
+    private void append(Invocation invocation, int exitCode, long durationMillis) {
+
+        if (timelineFile == null) {
+
+            return;
+        }
+
+        String entry = "  {" +
+                "\"module\": " + Json.quote(module) +
+                ", \"operation\": " + Json.quote(invocation.event.operation) +
+                ", \"command\": " + Json.quote(invocation.event.command) +
+                ", \"start\": " + Json.quote(invocation.start.toString()) +
+                ", \"durationMillis\": " + durationMillis +
+                ", \"exitCode\": " + exitCode +
+                ", \"attempt\": " + invocation.event.attempt +
+                "}";
+
+        Object lock = FILE_LOCKS.computeIfAbsent(timelineFile.getAbsolutePath(), key -> new Object());
+
+        synchronized (lock) {
+
+            try {
+
+                FileUtils.forceMkdirParent(timelineFile);
+
+                try (RandomAccessFile file = new RandomAccessFile(timelineFile, "rw")) {
+
+                    long end = findArrayEnd(file);
+
+                    String text = end < 0 ? "[\n" + entry + "\n]\n" : ",\n" + entry + "\n]\n";
+
+                    file.seek(Math.max(end, 0));
+                    file.write(text.getBytes(StandardCharsets.UTF_8));
+                    file.setLength(file.getFilePointer());
+                }
+
+            } catch (IOException e) {
+
+                log.warn("failed to write timeline " + timelineFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the position right after the last entry of the array in the given file, or {@code -1} if the file does not
+     * contain an array with at least one entry
+     */
+    private static long findArrayEnd(RandomAccessFile file) throws IOException {
+
+        for (long position = file.length() - 1; position >= 0; position--) {
+
+            file.seek(position);
+            int character = file.read();
+
+            if (character == ']') {
+
+                while (position > 0) {
+
+                    file.seek(--position);
+                    character = file.read();
+
+                    if (!Character.isWhitespace(character)) {
+
+                        return character == '[' ? -1 : position + 1;
+                    }
+                }
+
+                return -1;
+            }
+
+            if (!Character.isWhitespace(character)) {
+
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,250 @@
+package de.eitco.cicd.dotnet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal json support - just enough for the files this plugin writes and the service index and flat container
+ * responses of nuget servers it reads.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static String quote(String text) {
+
+        if (text == null) {
+
+            return "null";
+        }
+
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+
+        for (int index = 0; index < text.length(); index++) {
+
+            char character = text.charAt(index);
+
+            switch (character) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (character < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        builder.append(character);
+                    }
+                }
+            }
+        }
+
+        return builder.append('"').toString();
+    }
+
+    /**
+     * parses the given json - objects become {@link Map maps}, arrays {@link List lists} and strings {@link String
+     * strings}. Numbers and literals are not interpreted but returned as their text - except for {@code null}.
+     *
+     * @throws IllegalArgumentException if the given text is not valid json
+     */
+    static Object parse(String text) {
+
+        Parser parser = new Parser(text);
+
+        Object result = parser.value();
+
+        if (parser.skipWhitespace() != text.length()) {
+
+            throw parser.error("unexpected content");
+        }
+
+        return result;
+    }
+
+    private static final class Parser {
+
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Object value() {
+
+            char character = peek();
+
+            if (character == '"') {
+
+                return string();
+            }
+
+            if (character == '{') {
+
+                Map<String, Object> result = new LinkedHashMap<>();
+
+                for (boolean more = open('}'); more; more = next('}')) {
+
+                    if (peek() != '"') {
+
+                        throw error("expected a key");
+                    }
+
+                    String key = string();
+
+                    expect(':');
+
+                    result.put(key, value());
+                }
+
+                return result;
+            }
+
+            if (character == '[') {
+
+                List<Object> result = new ArrayList<>();
+
+                for (boolean more = open(']'); more; more = next(']')) {
+
+                    result.add(value());
+                }
+
+                return result;
+            }
+
+            int start = position;
+
+            while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || "+-.".indexOf(text.charAt(position)) >= 0)) {
+
+                position++;
+            }
+
+            if (start == position) {
+
+                throw error("unexpected character");
+            }
+
+            String literal = text.substring(start, position);
+
+            return literal.equals("null") ? null : literal;
+        }
+
+        /**
+         * consumes the opening bracket of an object or array
+         *
+         * @return whether the object or array has any content
+         */
+        private boolean open(char closing) {
+
+            position++;
+
+            if (peek() == closing) {
+
+                position++;
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * consumes the separator after a member or element
+         *
+         * @return whether another member or element follows
+         */
+        private boolean next(char closing) {
+
+            if (peek() == ',') {
+
+                position++;
+                return true;
+            }
+
+            expect(closing);
+            return false;
+        }
+
+        private String string() {
+
+            StringBuilder result = new StringBuilder();
+
+            position++;
+
+            while (position < text.length()) {
+
+                char character = text.charAt(position++);
+
+                if (character == '"') {
+
+                    return result.toString();
+                }
+
+                if (character != '\\' || position >= text.length()) {
+
+                    result.append(character);
+                    continue;
+                }
+
+                char escaped = text.charAt(position++);
+
+                switch (escaped) {
+                    case 'b' -> result.append('\b');
+                    case 'f' -> result.append('\f');
+                    case 'n' -> result.append('\n');
+                    case 'r' -> result.append('\r');
+                    case 't' -> result.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw error("invalid unicode escape");
+                        }
+                        result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> result.append(escaped);
+                }
+            }
+
+            throw error("unterminated string");
+        }
+
+        private char peek() {
+
+            if (skipWhitespace() >= text.length()) {
+
+                throw error("unexpected end");
+            }
+
+            return text.charAt(position);
+        }
+
+        private void expect(char character) {
+
+            if (peek() != character) {
+
+                throw error("expected '" + character + "'");
+            }
+
+            position++;
+        }
+
+        private int skipWhitespace() {
+
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+
+                position++;
+            }
+
+            return position;
+        }
+
+        private IllegalArgumentException error(String message) {
+
+            return new IllegalArgumentException("invalid json at position " + position + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The local nuget repository packages are installed to. Packages are stored in the hierarchical layout nuget uses for
+ * local feeds: {@code <id>/<version>/<id>.<version>.nupkg} - all lower case - with the {@code .sha512} checksum and the
+ * {@code .nuspec} of the package next to it. Nuget resolves a package id in such a feed by looking up a single
+ * directory, while in a flat feed it needs to read every package.
+ * <p>
+ * Nuget treats a feed containing any package in its root directory as a flat feed - so packages installed by former
+ * versions of this plugin need to be {@link #migrate() migrated} before packages can be installed hierarchically.
+ */
+public class LocalNugetRepository {
+
+    private static final String LOCK_FILE_NAME = ".migration.lock";
+    private static final String TRASH_PREFIX = ".purged-";
+
+    /**
+     * the directory packages that can not be migrated are moved to - so they are reported only once and do not keep
+     * the repository flat
+     */
+    public static final String UNREADABLE_DIRECTORY_NAME = ".unreadable";
+
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final Log log;
+
+    public LocalNugetRepository(Path root, Log log) {
+        this.root = root.toAbsolutePath().normalize();
+        this.log = log;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * installs the given package into this repository.
+     *
+     * @param checksum the {@link PackageInstaller#checksum(Path) checksum} of the package
+     * @return whether the package was installed - {@code false} if an identical package was already installed
+     */
+    public boolean install(NugetPackage nugetPackage, String checksum, PackageInstaller installer) throws IOException {
+
+        Path directory = nugetPackage.directoryIn(root);
+
+        boolean installed = installer.install(nugetPackage.file(), directory.resolve(nugetPackage.packageFileName()), checksum);
+
+        Path nuspec = directory.resolve(nugetPackage.lowerCaseId() + NugetPackage.NUSPEC_SUFFIX);
+
+        if (installed || !Files.isRegularFile(nuspec)) {
+
+            writeAtomically(nuspec, nugetPackage.nuspec());
+        }
+
+        return installed;
+    }
+
+    /**
+     * @return the package files located directly in the root directory of this repository - as installed by former
+     * versions of this plugin
+     */
+    public List<Path> flatPackages() throws IOException {
+
+        List<Path> result = new ArrayList<>();
+
+        if (!Files.isDirectory(root)) {
+
+            return result;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*" + NugetPackage.NUPKG_SUFFIX)) {
+
+            for (Path file : files) {
+
+                if (Files.isRegularFile(file)) {
+
+                    result.add(file);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * moves every package located in the root directory of this repository to its place in the hierarchical layout.
+     * Packages that can not be read are moved to the {@link #UNREADABLE_DIRECTORY_NAME} directory. Concurrent migrations - by other modules or other builds
+     * - are serialized by a lock file in the repository.
+     *
+     * @return the number of packages migrated
+     */
+    public int migrate() throws IOException {
+
+        synchronized (LOCKS.computeIfAbsent(root, key -> new Object())) {
+
+            Files.createDirectories(root);
+
+            try (FileChannel channel = FileChannel.open(root.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+                // the lock is released when the channel is closed
+                channel.lock();
+
+                int migrated = 0;
+
+                for (Path file : flatPackages()) {
+
+                    NugetPackage nugetPackage;
+
+                    try {
+
+                        nugetPackage = NugetPackage.read(file);
+
+                    } catch (IOException e) {
+
+                        Path unreadable = Files.createDirectories(root.resolve(UNREADABLE_DIRECTORY_NAME)).resolve(file.getFileName());
+
+                        Files.move(file, unreadable, StandardCopyOption.REPLACE_EXISTING);
+                        Files.deleteIfExists(PackageInstaller.checksumFile(file));
+
+                        log.warn("unable to migrate " + file + " - moved it to " + unreadable + ": " + e.getMessage());
+                        continue;
+                    }
+
+                    Path directory = nugetPackage.directoryIn(root);
+                    Path target = directory.resolve(nugetPackage.packageFileName());
+
+                    if (Files.isRegularFile(target)) {
+
+                        // installed hierarchically in the meantime - the flat package is outdated
+                        Files.delete(file);
+                        Files.deleteIfExists(PackageInstaller.checksumFile(file));
+                        continue;
+                    }
+
+                    String checksum = PackageInstaller.checksum(file);
+
+                    writeAtomically(PackageInstaller.checksumFile(target), checksum.getBytes(StandardCharsets.UTF_8));
+                    writeAtomically(directory.resolve(nugetPackage.lowerCaseId() + NugetPackage.NUSPEC_SUFFIX), nugetPackage.nuspec());
+
+                    Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Files.deleteIfExists(PackageInstaller.checksumFile(file));
+
+                    log.debug("migrated " + file + " to " + target);
+
+                    migrated++;
+                }
+
+                return migrated;
+            }
+        }
+    }
+
+    /**
+     * Decides which packages {@link #purge(PurgePolicy, Path) purge} removes. Release versions are never removed.
+     *
+     * @param keepSnapshots        the number of the newest snapshot versions of every package id to keep - a negative
+     *                             number keeps all
+     * @param maxSnapshotAgeMillis the time after which a snapshot version not used is removed - {@code 0} or less
+     *                             keeps them regardless of their age
+     * @param maxSizeBytes         the maximum size of the repository - if it is exceeded, the least recently used
+     *                             snapshot versions are removed. {@code 0} or less disables the limit
+     * @param snapshot             decides whether a lower case version is a snapshot version
+     */
+    public record PurgePolicy(int keepSnapshots, long maxSnapshotAgeMillis, long maxSizeBytes, Predicate<String> snapshot) {
+    }
+
+    /**
+     * A package version in this repository.
+     */
+    public record Entry(String id, String version, Path directory, long size, long lastUsed, long installed) {
+    }
+
+    /**
+     * removes packages from this repository according to the given policy. Packages are first renamed away and then
+     * deleted, so concurrent builds reading the repository either see a complete package or none. Entries of the
+     * removed packages in the given global packages folder are removed the same way - if their checksum shows they
+     * originate from this repository.
+     *
+     * @param globalPackages the global packages folder of nuget - {@code null} to leave it untouched
+     * @return the packages removed
+     */
+    public List<Entry> purge(PurgePolicy policy, Path globalPackages) throws IOException {
+
+        deleteTrash(root);
+
+        List<Entry> entries = entries();
+        List<Entry> snapshots = entries.stream().filter(entry -> policy.snapshot().test(entry.version())).toList();
+        long totalSize = entries.stream().mapToLong(Entry::size).sum();
+        long now = System.currentTimeMillis();
+
+        Set<Entry> purged = new LinkedHashSet<>();
+
+        if (policy.keepSnapshots() >= 0) {
+
+            snapshots.stream()
+                    .collect(Collectors.groupingBy(Entry::id))
+                    .values()
+                    .forEach(versions -> versions.stream()
+                            .sorted(Comparator.comparingLong(Entry::installed).reversed())
+                            .skip(policy.keepSnapshots())
+                            .forEach(purged::add));
+        }
+
+        if (policy.maxSnapshotAgeMillis() > 0) {
+
+            snapshots.stream().filter(entry -> now - entry.lastUsed() > policy.maxSnapshotAgeMillis()).forEach(purged::add);
+        }
+
+        totalSize -= purged.stream().mapToLong(Entry::size).sum();
+
+        if (policy.maxSizeBytes() > 0) {
+
+            for (Entry entry : snapshots.stream().sorted(Comparator.comparingLong(Entry::lastUsed)).toList()) {
+
+                if (totalSize <= policy.maxSizeBytes()) {
+
+                    break;
+                }
+
+                if (purged.add(entry)) {
+
+                    totalSize -= entry.size();
+                }
+            }
+
+            if (totalSize > policy.maxSizeBytes()) {
+
+                log.warn(root + " still exceeds its maximum size - only snapshot versions are removed");
+            }
+        }
+
+        List<Entry> result = new ArrayList<>();
+
+        for (Entry entry : purged) {
+
+            if (remove(entry, globalPackages)) {
+
+                result.add(entry);
+            }
+        }
+
+        return result;
+    }
+
+    private boolean remove(Entry entry, Path globalPackages) throws IOException {
+
+        String checksum = readChecksum(entry.directory().resolve(entry.id() + "." + entry.version() + NugetPackage.NUPKG_SUFFIX));
+
+        if (!moveToTrash(entry.directory(), root)) {
+
+            return false;
+        }
+
+        log.debug("removed " + entry.id() + " " + entry.version() + " from " + root);
+
+        if (globalPackages == null) {
+
+            return true;
+        }
+
+        Path globalEntry = globalPackages.resolve(entry.id()).resolve(entry.version());
+        String globalChecksum = readChecksum(globalEntry.resolve(entry.id() + "." + entry.version() + NugetPackage.NUPKG_SUFFIX));
+
+        // the global packages folder may contain a package of the same version from another source
+        if (checksum != null && checksum.equals(globalChecksum) && moveToTrash(globalEntry, globalPackages)) {
+
+            log.debug("removed " + globalEntry);
+            deleteTrash(globalPackages);
+        }
+
+        return true;
+    }
+
+    private static String readChecksum(Path packageFile) throws IOException {
+
+        Path checksumFile = PackageInstaller.checksumFile(packageFile);
+
+        return Files.isRegularFile(checksumFile) ? Files.readString(checksumFile, StandardCharsets.UTF_8).trim() : null;
+    }
+
+    /**
+     * renames the given directory into the trash of the given root directory and tries to delete it.
+     *
+     * @return whether the directory was moved - {@code false} if it is in use or vanished concurrently
+     */
+    private boolean moveToTrash(Path directory, Path trashRoot) throws IOException {
+
+        Path trash = trashRoot.resolve(TRASH_PREFIX + directory.getParent().getFileName() + "-" + directory.getFileName() + "-" + System.nanoTime());
+
+        try {
+
+            Files.move(directory, trash, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (NoSuchFileException e) {
+
+            return false;
+
+        } catch (IOException e) {
+
+            // e.g. files opened by a running process on windows
+            log.debug("unable to remove " + directory + ": " + e.getMessage());
+            return false;
+        }
+
+        deleteTrash(trashRoot);
+
+        return true;
+    }
+
+    /**
+     * deletes directories renamed into the trash - by this or by former purges that were not able to delete them.
+     */
+    private void deleteTrash(Path trashRoot) throws IOException {
+
+        if (!Files.isDirectory(trashRoot)) {
+
+            return;
+        }
+
+        try (DirectoryStream<Path> trash = Files.newDirectoryStream(trashRoot, TRASH_PREFIX + "*")) {
+
+            for (Path directory : trash) {
+
+                try {
+
+                    FileUtils.deleteDirectory(directory.toFile());
+
+                } catch (IOException e) {
+
+                    log.debug("unable to delete " + directory + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return every package version in this repository
+     */
+    public List<Entry> entries() throws IOException {
+
+        List<Entry> result = new ArrayList<>();
+
+        if (!Files.isDirectory(root)) {
+
+            return result;
+        }
+
+        try (DirectoryStream<Path> ids = Files.newDirectoryStream(root, path -> Files.isDirectory(path) && !path.getFileName().toString().startsWith("."))) {
+
+            for (Path idDirectory : ids) {
+
+                try (DirectoryStream<Path> versions = Files.newDirectoryStream(idDirectory, Files::isDirectory)) {
+
+                    for (Path versionDirectory : versions) {
+
+                        String id = idDirectory.getFileName().toString();
+                        String version = versionDirectory.getFileName().toString();
+
+                        Path packageFile = versionDirectory.resolve(id + "." + version + NugetPackage.NUPKG_SUFFIX);
+
+                        try {
+
+                            BasicFileAttributes attributes = Files.readAttributes(packageFile, BasicFileAttributes.class);
+
+                            long installed = attributes.lastModifiedTime().toMillis();
+                            // file systems mounted with noatime do not track access times
+                            long lastUsed = Math.max(installed, attributes.lastAccessTime().toMillis());
+
+                            result.add(new Entry(id, version, versionDirectory, FileUtils.sizeOfDirectory(versionDirectory.toFile()), lastUsed, installed));
+
+                        } catch (NoSuchFileException | UncheckedIOException e) {
+
+                            // not a package directory or removed concurrently
+                        }
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static void writeAtomically(Path file, byte[] content) throws IOException {
+
+        Files.createDirectories(file.getParent());
+
+        Path temporary = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+
+        try {
+
+            Files.write(temporary, content);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
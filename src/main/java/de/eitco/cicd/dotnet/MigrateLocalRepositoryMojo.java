@@ -0,0 +1,49 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This goal converts a flat local nuget repository - a directory containing {@code *.nupkg} files, as created by
+ * former versions of this plugin - in place into the hierarchical layout nuget uses for local feeds:
+ * {@code <id>/<version>/<id>.<version>.nupkg}, all lower case, with the {@code .sha512} checksum and the
+ * {@code .nuspec} of every package next to it. The {@code install} goal does this automatically, this goal allows
+ * migrating a repository without building anything.
+ */
+@Mojo(name = "migrate-local-repository", requiresProject = false)
+public class MigrateLocalRepositoryMojo extends AbstractDotnetMojo {
+
+    @Override
+    public void execute() throws MojoExecutionException {
+
+        if (skip) {
+            getLog().info("Skipping execution");
+            return;
+        }
+
+        File localNugetRepository = getResolvedNugetRepoDirectory();
+
+        if (!localNugetRepository.isDirectory()) {
+
+            getLog().info("local nuget repository " + localNugetRepository + " does not exist");
+            return;
+        }
+
+        try {
+
+            LocalNugetRepository repository = new LocalNugetRepository(localNugetRepository.toPath(), getLog());
+
+            int flatPackages = repository.flatPackages().size();
+            int migrated = repository.migrate();
+
+            getLog().info("migrated " + migrated + " of " + flatPackages + " packages of " + localNugetRepository + " to the hierarchical layout");
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+}
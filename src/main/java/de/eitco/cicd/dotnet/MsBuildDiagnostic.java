@@ -0,0 +1,87 @@
+package de.eitco.cicd.dotnet;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A warning or an error reported by msbuild (or any tool following its
+ * <a href="https://learn.microsoft.com/visualstudio/msbuild/msbuild-diagnostic-format-for-tasks">diagnostic format</a>)
+ * e.g.: {@code /src/A.cs(10,5): error CS1002: ; expected [/src/a.csproj]}.
+ */
+public record MsBuildDiagnostic(
+        String origin,
+        String location,
+        Severity severity,
+        String code,
+        String message,
+        String project
+) {
+
+    public static final Pattern DIAGNOSTIC_PATTERN = Pattern.compile(
+            "^\\s*(?<origin>.*?)(?:\\((?<location>[\\d,\\-]+)\\))?\\s*:\\s*(?:[^:]*?\\s)?(?<severity>error|warning)" +
+                    "(?:\\s+(?<code>[A-Za-z]*\\d+))?\\s*:\\s*(?<message>.*?)\\s*(?:\\[(?<project>[^\\[\\]]+)])?\\s*$"
+    );
+
+    public enum Severity {
+
+        WARNING, ERROR
+    }
+
+    /**
+     * @return the diagnostic the given line describes or {@code null} if the line is no msbuild diagnostic
+     */
+    public static MsBuildDiagnostic parse(String line) {
+
+        if (line == null || (!line.contains("error") && !line.contains("warning"))) {
+
+            return null;
+        }
+
+        Matcher matcher = DIAGNOSTIC_PATTERN.matcher(line);
+
+        if (!matcher.matches()) {
+
+            return null;
+        }
+
+        return new MsBuildDiagnostic(
+                matcher.group("origin").isBlank() ? null : matcher.group("origin").trim(),
+                matcher.group("location"),
+                "error".equals(matcher.group("severity")) ? Severity.ERROR : Severity.WARNING,
+                matcher.group("code"),
+                matcher.group("message"),
+                matcher.group("project")
+        );
+    }
+
+    public String present() {
+
+        StringBuilder builder = new StringBuilder();
+
+        if (code != null) {
+
+            builder.append(code).append(": ");
+        }
+
+        builder.append(message);
+
+        if (origin != null) {
+
+            builder.append(" (").append(origin);
+
+            if (location != null) {
+
+                builder.append(':').append(location);
+            }
+
+            builder.append(')');
+        }
+
+        if (project != null) {
+
+            builder.append(" [").append(project).append(']');
+        }
+
+        return builder.toString();
+    }
+}
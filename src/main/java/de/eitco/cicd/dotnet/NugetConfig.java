@@ -0,0 +1,502 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes nuget configuration files ({@code NuGet.Config}) the way {@code dotnet nuget add source} and
+ * {@code dotnet nuget update source} do, without launching {@code dotnet}. Package sources are stored in the
+ * {@code packageSources} section, their credentials in the {@code packageSourceCredentials} section - in an element
+ * named after the source. Passwords are stored in clear text, since encrypted passwords are only supported on windows.
+ */
+public class NugetConfig {
+
+    public static final String PACKAGE_SOURCES = "packageSources";
+    public static final String PACKAGE_SOURCE_CREDENTIALS = "packageSourceCredentials";
+    public static final String USERNAME = "Username";
+    public static final String CLEAR_TEXT_PASSWORD = "ClearTextPassword";
+    public static final String PASSWORD = "Password";
+
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String LOCK_DIRECTORY_NAME = "maven-dotnet-nuget-config-locks";
+    private static final Pattern ESCAPE_PATTERN = Pattern.compile("_[xX]([0-9a-fA-F]{4}|[0-9a-fA-F]{8})_");
+
+    /**
+     * locks per configuration file - file locks are held by the whole jvm, so threads of the same build need to be
+     * serialized separately.
+     */
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Document document;
+    private boolean changed;
+
+    private NugetConfig(Document document) {
+        this.document = document;
+    }
+
+    public static NugetConfig parse(InputStream inputStream) throws IOException {
+
+        try {
+
+            Document document = newDocumentBuilder().parse(inputStream);
+
+            removeWhitespace(document.getDocumentElement());
+
+            return new NugetConfig(document);
+
+        } catch (SAXException e) {
+
+            throw new IOException("invalid nuget configuration: " + e.getMessage(), e);
+        }
+    }
+
+    public static NugetConfig read(Path file) throws IOException {
+
+        try (InputStream inputStream = Files.newInputStream(file)) {
+
+            return parse(inputStream);
+
+        } catch (IOException e) {
+
+            throw new IOException("unable to read nuget configuration " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * applies the given modification to the given configuration file, holding a lock that prevents concurrent builds
+     * from losing each other's changes. If the file does not exist, it is created from the given template. The file is
+     * only written if the modification changed anything - and then atomically, so concurrent readers never see a
+     * partially written configuration.
+     *
+     * @return whether the file was changed
+     */
+    public static boolean update(Path file, byte[] template, Modification modification) throws IOException {
+
+        return locked(file, target -> {
+
+            boolean exists = Files.exists(target);
+
+            NugetConfig config = exists ? read(target) : parse(new ByteArrayInputStream(template));
+
+            modification.apply(config);
+
+            if (exists && !config.changed) {
+
+                return false;
+            }
+
+            config.write(target);
+
+            return true;
+        });
+    }
+
+    /**
+     * generates the given configuration file from the given template and modification, replacing the file if it
+     * exists - atomically and holding the same lock as {@link #update(Path, byte[], Modification)}.
+     *
+     * @return whether the content of the file changed
+     */
+    public static boolean generate(Path file, byte[] template, Modification modification) throws IOException {
+
+        return locked(file, target -> {
+
+            byte[] previous = Files.exists(target) ? Files.readAllBytes(target) : null;
+
+            NugetConfig config = parse(new ByteArrayInputStream(template));
+
+            modification.apply(config);
+
+            config.write(target);
+
+            return previous == null || !Arrays.equals(previous, Files.readAllBytes(target));
+        });
+    }
+
+    private interface LockedAction {
+
+        boolean apply(Path target) throws IOException;
+    }
+
+    /**
+     * runs the given action holding the lock of the given file. The lock file is located in the temporary directory,
+     * named after the hash of the real path of the configuration file - so no lock files are left next to the user's
+     * or the project's configurations.
+     */
+    private static boolean locked(Path file, LockedAction action) throws IOException {
+
+        Path target = file.toAbsolutePath().normalize();
+
+        if (Files.exists(target)) {
+
+            // the file a link points to is edited - and needs to be locked - instead of the link
+            target = target.toRealPath();
+        }
+
+        synchronized (LOCKS.computeIfAbsent(target, key -> new Object())) {
+
+            FileUtils.forceMkdir(target.getParent().toFile());
+
+            Path lockDirectory = Path.of(System.getProperty("java.io.tmpdir"), LOCK_DIRECTORY_NAME);
+            FileUtils.forceMkdir(lockDirectory.toFile());
+
+            Path lockFile = lockDirectory.resolve(BuildFingerprint.hash(target.toString()) + LOCK_SUFFIX);
+
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+                // the lock is released when the channel is closed
+                channel.lock();
+
+                return action.apply(target);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Modification {
+
+        void apply(NugetConfig config) throws IOException;
+    }
+
+    /**
+     * @return the url of the source with the given name, or {@code null} if this configuration does not contain it
+     */
+    public String getSource(String name) {
+
+        Element source = findAdd(section(PACKAGE_SOURCES, false), name);
+
+        return source != null ? source.getAttribute("value") : null;
+    }
+
+    public List<String> getSourceNames() {
+
+        List<String> result = new ArrayList<>();
+
+        Element sources = section(PACKAGE_SOURCES, false);
+
+        if (sources != null) {
+
+            for (Element add : children(sources, "add")) {
+
+                result.add(add.getAttribute("key"));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * adds the given source, or sets its url if it already exists. Credentials are only changed if given - just like
+     * {@code dotnet nuget update source} keeps the existing credentials if none are specified.
+     */
+    public void upsertSource(String name, String url, String username, String password) {
+
+        Element sources = section(PACKAGE_SOURCES, true);
+        Element source = findAdd(sources, name);
+
+        if (source == null) {
+
+            source = document.createElement("add");
+            source.setAttribute("key", name);
+            source.setAttribute("value", url);
+            sources.appendChild(source);
+            changed = true;
+
+        } else if (!url.equals(source.getAttribute("value"))) {
+
+            source.setAttribute("value", url);
+            changed = true;
+        }
+
+        if (username == null && password == null) {
+
+            return;
+        }
+
+        Element credentialsSection = section(PACKAGE_SOURCE_CREDENTIALS, true);
+        String elementName = encodeName(name);
+
+        List<Element> existing = children(credentialsSection, elementName);
+        Element credentials;
+
+        if (existing.isEmpty()) {
+
+            credentials = document.createElement(elementName);
+            credentialsSection.appendChild(credentials);
+            changed = true;
+
+        } else {
+
+            credentials = existing.get(0);
+        }
+
+        setValue(credentials, USERNAME, username);
+
+        if (password != null) {
+
+            // an encrypted password would take precedence over the clear text one
+            removeAdd(credentials, PASSWORD);
+            setValue(credentials, CLEAR_TEXT_PASSWORD, password);
+        }
+    }
+
+    private void setValue(Element parent, String key, String value) {
+
+        Element add = findAdd(parent, key);
+
+        if (value == null) {
+
+            if (add != null) {
+
+                parent.removeChild(add);
+                changed = true;
+            }
+
+            return;
+        }
+
+        if (add == null) {
+
+            add = document.createElement("add");
+            add.setAttribute("key", key);
+            add.setAttribute("value", value);
+            parent.appendChild(add);
+            changed = true;
+
+        } else if (!value.equals(add.getAttribute("value"))) {
+
+            add.setAttribute("value", value);
+            changed = true;
+        }
+    }
+
+    private void removeAdd(Element parent, String key) {
+
+        Element add = findAdd(parent, key);
+
+        if (add != null) {
+
+            parent.removeChild(add);
+            changed = true;
+        }
+    }
+
+    private Element section(String name, boolean create) {
+
+        Element root = document.getDocumentElement();
+        List<Element> sections = children(root, name);
+
+        if (!sections.isEmpty()) {
+
+            return sections.get(0);
+        }
+
+        if (!create) {
+
+            return null;
+        }
+
+        Element section = document.createElement(name);
+        root.appendChild(section);
+        changed = true;
+
+        return section;
+    }
+
+    private static Element findAdd(Element parent, String key) {
+
+        if (parent == null) {
+
+            return null;
+        }
+
+        // keys are compared case-insensitively by nuget
+        return children(parent, "add").stream()
+                .filter(add -> add.getAttribute("key").equalsIgnoreCase(key))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static List<Element> children(Element parent, String name) {
+
+        List<Element> result = new ArrayList<>();
+        NodeList childNodes = parent.getChildNodes();
+
+        for (int index = 0; index < childNodes.getLength(); index++) {
+
+            Node child = childNodes.item(index);
+
+            if (child instanceof Element element && element.getTagName().equals(name)) {
+
+                result.add(element);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * encodes a source name into a valid xml element name, the way .NET's {@code XmlConvert.EncodeLocalName} does -
+     * e.g. a space becomes {@code _x0020_}.
+     */
+    static String encodeName(String name) {
+
+        StringBuilder result = new StringBuilder();
+
+        for (int index = 0; index < name.length(); index++) {
+
+            char character = name.charAt(index);
+
+            boolean valid = index == 0 ? isNameStart(character) : isNameStart(character) || isNamePart(character);
+
+            // an underscore starting something that looks like an escape sequence needs to be escaped itself
+            boolean escapeLike = character == '_' && ESCAPE_PATTERN.matcher(name).region(index, name.length()).lookingAt();
+
+            if (valid && !escapeLike) {
+
+                result.append(character);
+
+            } else {
+
+                result.append(String.format("_x%04X_", (int) character));
+            }
+        }
+
+        return result.toString();
+    }
+
+    private static boolean isNameStart(char character) {
+
+        return Character.isLetter(character) || character == '_';
+    }
+
+    private static boolean isNamePart(char character) {
+
+        return Character.isDigit(character) || character == '.' || character == '-';
+    }
+
+    /**
+     * writes this configuration to the given file - to a temporary file first that atomically replaces the file a link
+     * points to, with the permissions of the file replaced. Should the file not be replaceable - e.g. on windows while
+     * another process reads it - it is overwritten in place instead.
+     */
+    void write(Path file) throws IOException {
+
+        Path target = Files.exists(file) ? file.toRealPath() : file;
+
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try {
+
+            try (OutputStream outputStream = Files.newOutputStream(temporary)) {
+
+                Transformer transformer = TransformerFactory.newInstance().newTransformer();
+                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+                transformer.setOutputProperty(OutputKeys.ENCODING, "utf-8");
+                transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+                transformer.transform(new DOMSource(document), new StreamResult(outputStream));
+
+            } catch (TransformerException e) {
+
+                throw new IOException(e);
+            }
+
+            if (Files.exists(target) && Files.getFileAttributeView(target, PosixFileAttributeView.class) != null) {
+
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+            }
+
+            try {
+
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (IOException e) {
+
+                Files.write(target, Files.readAllBytes(temporary));
+            }
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void removeWhitespace(Element element) {
+
+        NodeList childNodes = element.getChildNodes();
+
+        for (int index = childNodes.getLength() - 1; index >= 0; index--) {
+
+            Node child = childNodes.item(index);
+
+            if (child.getNodeType() == Node.TEXT_NODE && child.getTextContent().isBlank()) {
+
+                element.removeChild(child);
+
+            } else if (child instanceof Element childElement) {
+
+                removeWhitespace(childElement);
+            }
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws IOException {
+
+        try {
+
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setExpandEntityReferences(false);
+
+            return factory.newDocumentBuilder();
+
+        } catch (ParserConfigurationException e) {
+
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the nuget configuration file in the given directory, or {@code null} if there is none. Nuget accepts
+     * different spellings of the file name, which matters on case-sensitive file systems.
+     */
+    public static File findIn(File directory) {
+
+        File[] files = directory.listFiles((parent, name) -> name.equalsIgnoreCase("nuget.config"));
+
+        return files == null || files.length == 0 ? null : files[0];
+    }
+}
@@ -0,0 +1,361 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A nuget package file ({@code .nupkg}) - identified by the id and version in its {@code .nuspec}. Packages can be
+ * expanded into the layout nuget uses for its global packages folder and for hierarchical local feeds:
+ * {@code <id>/<version>/} - both lower case - containing the package itself, its {@code .sha512} checksum, its
+ * {@code .nuspec} and the extracted content.
+ */
+public class NugetPackage {
+
+    public static final String NUPKG_SUFFIX = ".nupkg";
+    public static final String NUSPEC_SUFFIX = ".nuspec";
+    public static final String METADATA_FILE_NAME = ".nupkg.metadata";
+
+    private final Path file;
+    private final String id;
+    private final String version;
+    private final byte[] nuspec;
+
+    private NugetPackage(Path file, String id, String version, byte[] nuspec) {
+        this.file = file;
+        this.id = id;
+        this.version = version;
+        this.nuspec = nuspec;
+    }
+
+    public static NugetPackage read(Path file) throws IOException {
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+
+            ZipEntry nuspecEntry = zip.stream()
+                    .filter(entry -> !entry.isDirectory())
+                    .filter(entry -> !entry.getName().contains("/"))
+                    .filter(entry -> entry.getName().toLowerCase(Locale.ROOT).endsWith(NUSPEC_SUFFIX))
+                    .findFirst()
+                    .orElseThrow(() -> new IOException(file + " does not contain a nuspec file"));
+
+            byte[] nuspec;
+
+            try (InputStream inputStream = zip.getInputStream(nuspecEntry)) {
+
+                nuspec = inputStream.readAllBytes();
+            }
+
+            Element metadata = metadata(file, nuspec);
+
+            return new NugetPackage(file, childText(file, metadata, "id"), childText(file, metadata, "version"), nuspec);
+        }
+    }
+
+    private static Element metadata(Path file, byte[] nuspec) throws IOException {
+
+        try {
+
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+
+            Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(nuspec));
+
+            NodeList metadata = document.getDocumentElement().getElementsByTagNameNS("*", "metadata");
+
+            if (metadata.getLength() == 0) {
+
+                throw new IOException("nuspec of " + file + " does not contain metadata");
+            }
+
+            return (Element) metadata.item(0);
+
+        } catch (ParserConfigurationException | SAXException e) {
+
+            throw new IOException("unable to read nuspec of " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String childText(Path file, Element parent, String name) throws IOException {
+
+        NodeList children = parent.getElementsByTagNameNS("*", name);
+
+        if (children.getLength() == 0 || children.item(0).getTextContent().isBlank()) {
+
+            throw new IOException("nuspec of " + file + " does not contain " + name);
+        }
+
+        return children.item(0).getTextContent().trim();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    /**
+     * @return the content of the {@code .nuspec} file of this package
+     */
+    public byte[] nuspec() {
+        return nuspec;
+    }
+
+    public String lowerCaseId() {
+        return id.toLowerCase(Locale.ROOT);
+    }
+
+    public String normalizedVersion() {
+        return normalizeVersion(version);
+    }
+
+    /**
+     * @return the directory this package is expanded to below the given root - {@code <id>/<version>}, both in lower
+     * case
+     */
+    public Path directoryIn(Path root) {
+
+        return root.resolve(lowerCaseId()).resolve(normalizedVersion());
+    }
+
+    /**
+     * @return the lower case name of the package file in its expanded layout - {@code <id>.<version>.nupkg}
+     */
+    public String packageFileName() {
+
+        return lowerCaseId() + "." + normalizedVersion() + NUPKG_SUFFIX;
+    }
+
+    /**
+     * normalizes a version the way nuget does for its folder and file names: numeric parts without leading zeros, at
+     * least three of them - a fourth one only if it is not zero -, no build metadata and everything in lower case.
+     */
+    static String normalizeVersion(String version) {
+
+        String withoutMetadata = version.split("\\+", 2)[0];
+        int releaseLabelStart = withoutMetadata.indexOf('-');
+
+        String numbers = releaseLabelStart < 0 ? withoutMetadata : withoutMetadata.substring(0, releaseLabelStart);
+        String releaseLabel = releaseLabelStart < 0 ? "" : withoutMetadata.substring(releaseLabelStart);
+
+        List<String> parts = new ArrayList<>();
+
+        for (String part : numbers.split("\\.")) {
+
+            try {
+
+                parts.add(String.valueOf(Long.parseLong(part)));
+
+            } catch (NumberFormatException e) {
+
+                // not a valid nuget version - leave it as it is
+                return version.toLowerCase(Locale.ROOT);
+            }
+        }
+
+        while (parts.size() < 3) {
+
+            parts.add("0");
+        }
+
+        if (parts.size() == 4 && parts.get(3).equals("0")) {
+
+            parts.remove(3);
+        }
+
+        return (String.join(".", parts) + releaseLabel).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * expands this package into the layout of nuget's global packages folder below the given root - including the
+     * {@code .nupkg.metadata} file that marks the package as completely extracted. The package is expanded into a
+     * temporary directory first, which is then renamed - so concurrent restores never see a partially expanded package.
+     * If the given root already contains this package with the given checksum, nothing is done.
+     *
+     * @param checksum the {@link PackageInstaller#checksum(Path) checksum} of this package
+     * @param source   the source to record as origin of the package
+     * @return whether the package was expanded - {@code false} if it was up-to-date or expanded by a concurrent restore
+     */
+    public boolean expandInto(Path root, String checksum, String source, Log log) throws IOException {
+
+        Path directory = directoryIn(root);
+        Path checksumFile = directory.resolve(packageFileName() + PackageInstaller.CHECKSUM_SUFFIX);
+
+        if (Files.isRegularFile(directory.resolve(METADATA_FILE_NAME)) && Files.isRegularFile(checksumFile) &&
+                Files.readString(checksumFile, StandardCharsets.UTF_8).trim().equals(checksum)) {
+
+            log.debug(directory + " is up-to-date");
+            return false;
+        }
+
+        Files.createDirectories(directory.getParent());
+
+        Path temporary = Files.createTempDirectory(directory.getParent(), "." + directory.getFileName() + ".");
+
+        try {
+
+            extract(temporary);
+
+            Files.copy(file, temporary.resolve(packageFileName()));
+            Files.writeString(temporary.resolve(packageFileName() + PackageInstaller.CHECKSUM_SUFFIX), checksum, StandardCharsets.UTF_8);
+            Files.write(temporary.resolve(lowerCaseId() + NUSPEC_SUFFIX), nuspec);
+            Files.writeString(
+                    temporary.resolve(METADATA_FILE_NAME),
+                    "{\n  \"version\": 2,\n  \"contentHash\": " + Json.quote(checksum) + ",\n  \"source\": " + Json.quote(source) + "\n}",
+                    StandardCharsets.UTF_8
+            );
+
+            if (!replace(directory, temporary)) {
+
+                log.debug(directory + " was expanded concurrently");
+                return false;
+            }
+
+            log.debug("expanded " + file + " to " + directory);
+
+            return true;
+
+        } finally {
+
+            if (Files.exists(temporary)) {
+
+                FileUtils.deleteDirectory(temporary.toFile());
+            }
+        }
+    }
+
+    /**
+     * moves the given temporary directory to the given directory. An existing directory is renamed away first and
+     * deleted afterward - so readers never see a partially deleted or partially written package. This is not atomic:
+     * between the two renames the directory does not exist, and a concurrent restore may extract the package into it
+     * itself. A complete package found there is kept.
+     *
+     * @return whether the given temporary directory was moved - {@code false} if a concurrent restore completed the
+     * package first
+     */
+    static boolean replace(Path directory, Path temporary) throws IOException {
+
+        Path previous = null;
+
+        if (Files.exists(directory)) {
+
+            previous = directory.resolveSibling("." + directory.getFileName() + ".old." + System.nanoTime());
+
+            move(directory, previous);
+        }
+
+        try {
+
+            move(temporary, directory);
+
+            return true;
+
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+
+            if (Files.isRegularFile(directory.resolve(METADATA_FILE_NAME))) {
+
+                return false;
+            }
+
+            throw e;
+
+        } finally {
+
+            if (previous != null) {
+
+                FileUtils.deleteDirectory(previous.toFile());
+            }
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+
+        try {
+
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (AtomicMoveNotSupportedException e) {
+
+            Files.move(source, target);
+        }
+    }
+
+    private void extract(Path directory) throws IOException {
+
+        Path target = directory.toAbsolutePath().normalize();
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+
+            for (ZipEntry entry : zip.stream().toList()) {
+
+                String name = entry.getName();
+
+                if (entry.isDirectory() || isPackagingFile(name)) {
+
+                    continue;
+                }
+
+                // package paths are url encoded, e.g. spaces are stored as %20
+                Path extracted = target.resolve(URLDecoder.decode(name.replace("+", "%2B"), StandardCharsets.UTF_8)).normalize();
+
+                if (!extracted.startsWith(target)) {
+
+                    throw new IOException(file + " contains invalid path " + name);
+                }
+
+                Files.createDirectories(extracted.getParent());
+
+                try (InputStream inputStream = zip.getInputStream(entry)) {
+
+                    Files.copy(inputStream, extracted, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the given entry is part of the open packaging conventions container rather than the package
+     * content - nuget does not extract those. The nuspec is not extracted either, it is written with a lower case name.
+     */
+    private static boolean isPackagingFile(String name) {
+
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+
+        return lowerCaseName.startsWith("_rels/") ||
+                lowerCaseName.startsWith("package/") ||
+                lowerCaseName.equals("[content_types].xml") ||
+                lowerCaseName.endsWith(".psmdcp") ||
+                (!lowerCaseName.contains("/") && lowerCaseName.endsWith(NUSPEC_SUFFIX));
+    }
+}
@@ -0,0 +1,409 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Pushes packages to a nuget server using the nuget server api directly, instead of starting a {@code dotnet} process
+ * for every push. The publish url is resolved from the {@code PackagePublish} resource of the service index
+ * ({@code index.json}). All pushes of a build share one http client - and thus its connections, using http/2 where the
+ * server supports it. Packages are streamed from disk, never loaded into memory as a whole. Server errors and
+ * connection problems are retried according to the {@link RetryPolicy}. Additionally, the versions a server already
+ * has of a package can be queried from its flat container ({@code PackageBaseAddress}).
+ */
+public class NugetPushClient {
+
+    public static final String PACKAGE_PUBLISH_TYPE = "PackagePublish/2.0.0";
+    public static final String PACKAGE_BASE_ADDRESS_TYPE = "PackageBaseAddress/3.0.0";
+    public static final String API_KEY_HEADER = "X-NuGet-ApiKey";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_REDIRECTS = 5;
+    private static final Set<Integer> REDIRECT_STATUSES = Set.of(301, 302, 303, 307, 308);
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+
+    /**
+     * shared by all pushes of this jvm, so connections are reused across modules. Redirects are followed by
+     * {@link #exchange(HttpRequest, HttpResponse.BodyHandler)}, so credentials never leave the origin they are meant for.
+     */
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    private final HttpClient httpClient;
+    private final String apiKey;
+    private final String username;
+    private final String password;
+    private final RetryPolicy retryPolicy;
+    private final Duration timeout;
+    private final Log log;
+
+    /**
+     * @param apiKey   the api key sent in the {@code X-NuGet-ApiKey} header - may be {@code null}
+     * @param username the user for basic authentication - if {@code null}, no basic authentication is used
+     * @param password the password for basic authentication
+     * @param timeout  the maximum duration of a single request - {@code null} for no limit
+     */
+    public NugetPushClient(String apiKey, String username, String password, RetryPolicy retryPolicy, Duration timeout, Log log) {
+        this(HTTP_CLIENT, apiKey, username, password, retryPolicy, timeout, log);
+    }
+
+    NugetPushClient(HttpClient httpClient, String apiKey, String username, String password, RetryPolicy retryPolicy, Duration timeout, Log log) {
+        this.httpClient = httpClient;
+        this.apiKey = apiKey;
+        this.username = username;
+        this.password = password;
+        this.retryPolicy = retryPolicy;
+        this.timeout = timeout;
+        this.log = log;
+    }
+
+    /**
+     * @param source the url of a nuget source - either a v3 service index ({@code .../index.json}) or the url to push to
+     * @return the url packages are pushed to
+     */
+    public String resolvePublishUrl(String source) throws MojoExecutionException {
+
+        if (!isServiceIndex(source)) {
+
+            return source;
+        }
+
+        String publishUrl = resolveResource(source, PACKAGE_PUBLISH_TYPE);
+
+        if (publishUrl == null) {
+
+            throw new MojoExecutionException("service index " + source + " does not contain a " + PACKAGE_PUBLISH_TYPE + " resource");
+        }
+
+        log.debug("resolved publish url of " + source + ": " + publishUrl);
+
+        return publishUrl;
+    }
+
+    /**
+     * @param source the url of a v3 service index
+     * @return the url of the given resource type in the given service index - {@code null} if it has no such resource
+     */
+    public String resolveResource(String source, String type) throws MojoExecutionException {
+
+        HttpResponse<String> response = send(
+                request(URI.create(source)).GET().build(),
+                HttpResponse.BodyHandlers.ofString(),
+                "get service index " + source
+        );
+
+        if (response.statusCode() != 200) {
+
+            throw new MojoExecutionException("unable to get service index " + source + ": http " + response.statusCode());
+        }
+
+        return findResource(response.body(), type);
+    }
+
+    public static boolean isServiceIndex(String source) {
+
+        return source.endsWith("/index.json");
+    }
+
+    /**
+     * queries the flat container ({@code PackageBaseAddress}) of a nuget server for the versions of a package.
+     *
+     * @param baseAddress the url of the flat container
+     * @param lowerCaseId the id of the package in lower case
+     * @return the normalized, lower case versions the server has of the given package - empty if it does not know the
+     * package at all
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> publishedVersions(String baseAddress, String lowerCaseId) throws MojoExecutionException {
+
+        String url = (baseAddress.endsWith("/") ? baseAddress : baseAddress + "/") + URLEncoder.encode(lowerCaseId, StandardCharsets.UTF_8) + "/index.json";
+
+        HttpResponse<String> response = send(
+                request(URI.create(url)).GET().build(),
+                HttpResponse.BodyHandlers.ofString(),
+                "get versions of " + lowerCaseId
+        );
+
+        if (response.statusCode() == 404) {
+
+            return Set.of();
+        }
+
+        if (response.statusCode() != 200) {
+
+            throw new MojoExecutionException("unable to get versions of " + lowerCaseId + " from " + url + ": http " + response.statusCode());
+        }
+
+        try {
+
+            Object versions = ((Map<String, Object>) Json.parse(response.body())).get("versions");
+
+            if (!(versions instanceof List<?> list)) {
+
+                return Set.of();
+            }
+
+            Set<String> result = new HashSet<>();
+
+            for (Object version : list) {
+
+                if (version instanceof String value) {
+
+                    result.add(NugetPackage.normalizeVersion(value));
+                }
+            }
+
+            return Set.copyOf(result);
+
+        } catch (IllegalArgumentException | ClassCastException e) {
+
+            throw new MojoExecutionException("invalid version index " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the url of the first resource of the given type - or a versioned variant of it - in the given service
+     * index, {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    static String findResource(String serviceIndex, String type) throws MojoExecutionException {
+
+        try {
+
+            Object resources = ((Map<String, Object>) Json.parse(serviceIndex)).get("resources");
+
+            if (!(resources instanceof List<?> list)) {
+
+                return null;
+            }
+
+            for (Object resource : list) {
+
+                if (resource instanceof Map<?, ?> map && map.get("@type") instanceof String resourceType &&
+                        (resourceType.equals(type) || resourceType.startsWith(type + "/")) && map.get("@id") instanceof String id) {
+
+                    return id;
+                }
+            }
+
+            return null;
+
+        } catch (IllegalArgumentException | ClassCastException e) {
+
+            throw new MojoExecutionException("invalid service index: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * pushes the given package to the given publish url.
+     *
+     * @param skipDuplicate whether a package the server already has ({@code http 409}) is considered a success
+     * @return {@code true} if the package was pushed, {@code false} if the server already had it
+     */
+    public boolean push(Path nupkg, String publishUrl, boolean skipDuplicate) throws MojoExecutionException {
+
+        String boundary = "----nuget-" + UUID.randomUUID();
+
+        String head = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"package\"; filename=\"package.nupkg\"\r\n" +
+                "Content-Type: application/octet-stream\r\n\r\n";
+        String tail = "\r\n--" + boundary + "--\r\n";
+
+        HttpRequest request;
+
+        try {
+
+            request = request(URI.create(publishUrl))
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .PUT(HttpRequest.BodyPublishers.concat(
+                            HttpRequest.BodyPublishers.ofString(head, StandardCharsets.UTF_8),
+                            HttpRequest.BodyPublishers.ofFile(nupkg),
+                            HttpRequest.BodyPublishers.ofString(tail, StandardCharsets.UTF_8)
+                    ))
+                    .build();
+
+        } catch (FileNotFoundException e) {
+
+            throw new MojoExecutionException(e);
+        }
+
+        HttpResponse<String> response = send(request, HttpResponse.BodyHandlers.ofString(), "push " + nupkg.getFileName());
+
+        int status = response.statusCode();
+
+        if (status >= 200 && status < 300) {
+
+            return true;
+        }
+
+        if (status == 409 && skipDuplicate) {
+
+            log.info(nupkg.getFileName() + " already exists on the server");
+            return false;
+        }
+
+        throw new MojoExecutionException("failed to push " + nupkg.getFileName() + " to " + publishUrl + ": http " + status + describe(response.body()));
+    }
+
+    private static String describe(String body) {
+
+        if (body == null || body.isBlank()) {
+
+            return "";
+        }
+
+        return " - " + (body.length() > 500 ? body.substring(0, 500) + "..." : body.trim());
+    }
+
+    private HttpRequest.Builder request(URI uri) {
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).header("X-NuGet-Protocol-Version", "4.1.0");
+
+        if (timeout != null) {
+
+            builder.timeout(timeout);
+        }
+
+        if (apiKey != null) {
+
+            builder.header(API_KEY_HEADER, apiKey);
+        }
+
+        if (username != null) {
+
+            String credentials = username + ":" + (password == null ? "" : password);
+
+            builder.header(AUTHORIZATION_HEADER, "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        return builder;
+    }
+
+    /**
+     * sends the given request, retrying server errors, throttling and connection problems.
+     */
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, String operation) throws MojoExecutionException {
+
+        int retries = retryPolicy.retries(RetryPolicy.PUSH);
+
+        for (int attempt = 1; ; attempt++) {
+
+            String failure;
+
+            try {
+
+                HttpResponse<T> response = exchange(request, bodyHandler);
+
+                if (!isTransient(response.statusCode()) || attempt > retries) {
+
+                    return response;
+                }
+
+                failure = "http " + response.statusCode();
+
+            } catch (IOException e) {
+
+                if (attempt > retries) {
+
+                    throw new MojoExecutionException("unable to " + operation + ": " + e.getMessage(), e);
+                }
+
+                failure = e.toString();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException(e);
+            }
+
+            long delay = retryPolicy.delayMillis(attempt);
+
+            log.warn("unable to " + operation + " (" + failure + ") - retrying in " + delay + "ms");
+
+            try {
+
+                Thread.sleep(delay);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException(e);
+            }
+        }
+    }
+
+    /**
+     * sends the given request, following redirects. The api key and the basic authentication are only sent to the origin
+     * - scheme, host and port - of the given request. Redirects to other origins, like a content delivery network, are
+     * followed without them.
+     */
+    private <T> HttpResponse<T> exchange(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+
+        URI origin = request.uri();
+        HttpResponse<T> response = httpClient.send(request, bodyHandler);
+
+        for (int redirects = 0; redirects < MAX_REDIRECTS && REDIRECT_STATUSES.contains(response.statusCode()); redirects++) {
+
+            String location = response.headers().firstValue("Location").orElse(null);
+
+            if (location == null) {
+
+                return response;
+            }
+
+            URI target = response.uri().resolve(location);
+            boolean sameOrigin = sameOrigin(origin, target);
+
+            log.debug("following redirect from " + response.uri() + " to " + target + (sameOrigin ? "" : " without credentials"));
+
+            HttpRequest.Builder builder = HttpRequest.newBuilder(response.request(), (name, value) -> sameOrigin ||
+                    !(name.equalsIgnoreCase(API_KEY_HEADER) || name.equalsIgnoreCase(AUTHORIZATION_HEADER))).uri(target);
+
+            if (response.statusCode() == 303) {
+
+                builder.GET();
+            }
+
+            response = httpClient.send(builder.build(), bodyHandler);
+        }
+
+        return response;
+    }
+
+    static boolean sameOrigin(URI first, URI second) {
+
+        return first.getScheme().equalsIgnoreCase(second.getScheme()) &&
+                first.getHost() != null && first.getHost().equalsIgnoreCase(second.getHost()) &&
+                port(first) == port(second);
+    }
+
+    private static int port(URI uri) {
+
+        return uri.getPort() >= 0 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    static boolean isTransient(int status) {
+
+        return status == 408 || status == 429 || status >= 500;
+    }
+}
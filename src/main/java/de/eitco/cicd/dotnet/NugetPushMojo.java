@@ -1,19 +1,35 @@
 package de.eitco.cicd.dotnet;
 
+import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Server;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * This goal calls {@code nuget push} on every nupgk file located in the configured
- * {@code targetDirectory}.
+ * {@code targetDirectory}. Packages are pushed concurrently - each one retried independently. With
+ * {@link #deployAtEnd} the packages of all modules are pushed together at the end of the build.
  */
 @Mojo(name = "push", defaultPhase = LifecyclePhase.DEPLOY)
 public class NugetPushMojo extends AbstractDotnetMojo {
 
+    static final String NUGET_PACKAGING = "nuget";
+    static final String PUSH_STATE_KEY = NugetPushMojo.class.getName() + ".state";
+
     /**
      * This parameter specifies the id of the nuget server to push to. This id is used to find the
      * corresponding {@code <server>} entry in the {@code settings.xml} for authentication.
@@ -48,14 +64,98 @@ public class NugetPushMojo extends AbstractDotnetMojo {
     @Parameter
     private String repositoryName;
 
+    /**
+     * This parameter specifies how many packages are pushed concurrently.
+     */
+    @Parameter(defaultValue = "4", property = "dotnet.pushThreads")
+    private int pushThreads;
+
+    /**
+     * If set to {@code true}, packages the server already has are not considered an error
+     * ({@code dotnet nuget push --skip-duplicate}).
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.skipDuplicate")
+    private boolean skipDuplicate;
+
+    /**
+     * If set to {@code true}, packages are pushed by the plugin itself using the nuget server api, instead of calling
+     * {@code dotnet nuget push} for every package. All pushes share one http connection pool and the publish url is
+     * resolved from the service index only once per build. The configured server url is used directly, no nuget source
+     * is added.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.nativePush")
+    private boolean nativePush;
+
+    /**
+     * If set to {@code true}, the server is asked for the versions it already has of every package before pushing it -
+     * using the flat container ({@code PackageBaseAddress}) of its service index. Packages the server already has are
+     * skipped instead of being uploaded again. The answers are cached for the whole build and the queries are made
+     * concurrently, like the pushes. This requires the server url to be the url of a service index
+     * ({@code .../index.json}) - otherwise no packages are skipped.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.skipExisting")
+    private boolean skipExisting;
+
+    /**
+     * If set to {@code true}, packages are not pushed in the deploy phase of every module. Instead, the packages of each
+     * module and the repository they are to be pushed to are staged, and all of them are pushed at once - with up to
+     * {@link #pushThreads} concurrent uploads - when the last module of the reactor using this goal has completed. If any
+     * of these modules fails before, nothing is pushed at all - so a failing build never leaves a partial release. The
+     * parameters of the last module determine the number of threads, every other parameter applies per module - the
+     * packages of every module are pushed with its own working directory and nuget configuration. Modules of the same
+     * reactor may push at the end or immediately.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.deployAtEnd")
+    private boolean deployAtEnd;
+
     @Parameter(defaultValue = "${project}", readonly = true)
     protected MavenProject project;
 
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor pluginDescriptor;
+
+    /**
+     * the repository packages are pushed to
+     *
+     * @param sourceName the name to register the repository as nuget source with - {@code null} if the url is pushed
+     *                   to directly
+     */
+    record PushTarget(String url, String user, String apiKey, String sourceName, boolean skipDuplicate, boolean nativePush,
+                      boolean skipExisting) {
+    }
+
+    enum PushState {
+
+        /**
+         * the module did not push any packages
+         */
+        SKIPPED,
+        /**
+         * the module pushed its packages immediately
+         */
+        PUSHED,
+        /**
+         * the packages of the module are to be pushed at the end of the build
+         */
+        STAGED
+    }
+
+    /**
+     * what one module did with its packages - every execution of this goal records it, so that the last one knows
+     * whether every module using this goal has completed
+     *
+     * @param executor the executor to push the packages with - {@code null} if they are pushed natively or not at all
+     */
+    record StagedPush(PushState state, PushTarget target, List<Path> packages, DotnetExecutor executor) {
+    }
+
     @Override
     public void execute() throws MojoExecutionException {
 
         if (skip) {
             getLog().info("Skipping execution");
+
+            record(new StagedPush(PushState.SKIPPED, null, List.of(), null));
             return;
         }
 
@@ -66,23 +166,250 @@ public class NugetPushMojo extends AbstractDotnetMojo {
 
         String repositoryUrl = decideRepositoryUrl();
 
-        boolean addSource = coalesce(forceAddSource, nugetSources.get(nugetServerId) == null && repositoryUrl.endsWith("/index.json"));
+        // the isolated nuget configuration is private to this build - the source is only added to it to provide the
+        // credentials of a user, otherwise the url is pushed to directly
+        boolean addSource = !nativePush && coalesce(
+                forceAddSource,
+                isolatedNugetConfig ? nugetServerUser != null : nugetSources.get(nugetServerId) == null && repositoryUrl.endsWith("/index.json")
+        );
+
+        PushTarget target = new PushTarget(
+                repositoryUrl,
+                nugetServerUser,
+                apiKey,
+                addSource ? coalesce(repositoryName, nugetServerId) : null,
+                skipDuplicate,
+                nativePush,
+                skipExisting
+        );
+
+        List<Path> packages;
 
-        DotnetExecutor dotnetExecutor = newExecutor();
+        try {
 
-        String repository = repositoryUrl;
+            packages = ParallelPush.findPackages(targetDirectory);
 
-        if (addSource) {
+        } catch (IOException e) {
 
-            String usedRepositoryName = coalesce(repositoryName, nugetServerId);
+            throw new MojoExecutionException(e);
+        }
+
+        StagedPush staged = new StagedPush(PushState.STAGED, target, packages, nativePush ? null : newExecutor());
 
-            repository = usedRepositoryName;
+        if (deployAtEnd) {
 
-            dotnetExecutor.upsertNugetSource(repositoryUrl, usedRepositoryName, nugetServerUser, apiKey, null);
+            getLog().info("Staged " + packages.size() + " packages of " + project.getArtifactId() + " - pushing at the end of the build");
+
+            record(staged);
+            return;
         }
 
-        dotnetExecutor.push(apiKey, repository);
+        push(List.of(staged));
+
+        record(new StagedPush(PushState.PUSHED, target, packages, null));
+    }
+
+    /**
+     * records what the current module did with its packages and - if every module of the reactor using this goal has
+     * done so - pushes the packages all modules staged.
+     */
+    private void record(StagedPush state) throws MojoExecutionException {
+
+        pluginContext().put(PUSH_STATE_KEY, state);
+
+        List<StagedPush> allStaged = new ArrayList<>();
+
+        for (MavenProject reactorProject : session.getProjects()) {
+
+            if (!usesPush(reactorProject)) {
+
+                continue;
+            }
+
+            Object reactorState = session.getPluginContext(pluginDescriptor, reactorProject).get(PUSH_STATE_KEY);
+
+            if (reactorState == null) {
+
+                return;
+            }
+
+            StagedPush reactorStaged = (StagedPush) reactorState;
+
+            if (reactorStaged.state() == PushState.STAGED) {
+
+                allStaged.add(reactorStaged);
+            }
+        }
+
+        if (allStaged.isEmpty()) {
+
+            return;
+        }
+
+        AtomicReference<MojoExecutionException> failure = new AtomicReference<>();
+
+        // with a concurrent reactor, the last modules may complete at the same time - only one of them pushes. A failed
+        // push is remembered as well, since pushing again would push the packages that were published already again
+        String outcome = SessionCache.get(session, "deploy-at-end", () -> {
+
+            try {
+
+                push(allStaged);
+
+                return "";
+
+            } catch (MojoExecutionException e) {
+
+                failure.set(e);
+
+                return String.valueOf(e.getMessage());
+            }
+        });
+
+        if (failure.get() != null) {
+
+            throw failure.get();
+        }
+
+        if (!outcome.isEmpty()) {
+
+            throw new MojoExecutionException("pushing the packages staged until the end of the build failed: " + outcome);
+        }
+    }
+
+    private boolean usesPush(MavenProject reactorProject) {
+
+        if (NUGET_PACKAGING.equals(reactorProject.getPackaging())) {
+
+            return true;
+        }
+
+        Plugin plugin = reactorProject.getPlugin(pluginDescriptor.getPluginLookupKey());
+
+        return plugin != null && plugin.getExecutions().stream().anyMatch(execution -> execution.getGoals().contains(mojoExecution.getGoal()));
+    }
+
+    /**
+     * pushes all the given packages in one batch - the packages of every module with its own executor
+     */
+    private void push(List<StagedPush> stagedPushes) throws MojoExecutionException {
+
+        Map<Path, ParallelPush.Pusher> pushers = new LinkedHashMap<>();
+
+        for (StagedPush staged : stagedPushes) {
+
+            ParallelPush.Pusher pusher = pusher(staged.target(), staged.executor());
+
+            for (Path nupkg : staged.packages()) {
+
+                pushers.put(nupkg, pusher);
+            }
+        }
+
+        List<ParallelPush.Result> results = new ParallelPush(pushThreads, getLog()).push(
+                pushers.keySet(),
+                nupkg -> pushers.get(nupkg).push(nupkg)
+        );
+
+        ParallelPush.failOnErrors(results);
+    }
+
+    private ParallelPush.Pusher pusher(PushTarget target, DotnetExecutor dotnetExecutor) throws MojoExecutionException {
+
+        ParallelPush.Pusher pusher = uploader(target, dotnetExecutor);
+
+        if (!target.skipExisting()) {
+
+            return pusher;
+        }
+
+        if (!NugetPushClient.isServiceIndex(target.url())) {
+
+            getLog().warn(target.url() + " is not a service index - unable to check for existing packages");
+            return pusher;
+        }
+
+        NugetPushClient client = client(target);
+
+        String baseAddress = SessionCache.get(
+                session,
+                "package-base-address:" + target.url(),
+                () -> client.resolveResource(target.url(), NugetPushClient.PACKAGE_BASE_ADDRESS_TYPE)
+        );
+
+        if (baseAddress == null) {
+
+            getLog().warn(target.url() + " does not provide a " + NugetPushClient.PACKAGE_BASE_ADDRESS_TYPE + " resource - unable to check for existing packages");
+            return pusher;
+        }
+
+        return nupkg -> {
+
+            NugetPackage nugetPackage;
+
+            try {
+
+                nugetPackage = NugetPackage.read(nupkg);
+
+            } catch (IOException e) {
+
+                throw new MojoExecutionException(e);
+            }
+
+            Set<String> versions = SessionCache.get(
+                    session,
+                    "published-versions:" + baseAddress + "|" + nugetPackage.lowerCaseId(),
+                    () -> client.publishedVersions(baseAddress, nugetPackage.lowerCaseId())
+            );
+
+            if (versions.contains(nugetPackage.normalizedVersion())) {
+
+                getLog().info(target.url() + " already has " + nugetPackage.id() + " " + nugetPackage.version());
+                return false;
+            }
+
+            return pusher.push(nupkg);
+        };
+    }
+
+    private ParallelPush.Pusher uploader(PushTarget target, DotnetExecutor dotnetExecutor) throws MojoExecutionException {
+
+        if (target.nativePush()) {
+
+            NugetPushClient client = client(target);
+
+            String publishUrl = SessionCache.get(session, "publish-url:" + target.url(), () -> client.resolvePublishUrl(target.url()));
+
+            return nupkg -> client.push(nupkg, publishUrl, target.skipDuplicate());
+        }
+
+        String source = target.url();
+
+        if (target.sourceName() != null) {
+
+            source = target.sourceName();
+
+            dotnetExecutor.upsertNugetSource(target.url(), target.sourceName(), target.user(), target.apiKey(), null);
+        }
+
+        String usedSource = source;
+
+        return nupkg -> dotnetExecutor.push(nupkg.toFile(), target.apiKey(), usedSource, target.skipDuplicate());
+    }
+
+    private NugetPushClient client(PushTarget target) throws MojoExecutionException {
+
+        int requestTimeout = resolveTimeout();
 
+        // the api key is sent as header, basic authentication is only used if a user is configured
+        return new NugetPushClient(
+                target.apiKey(),
+                target.user(),
+                target.apiKey(),
+                retryPolicy(),
+                requestTimeout > 0 ? Duration.ofSeconds(requestTimeout) : null,
+                getLog()
+        );
     }
 
     private String decideRepositoryUrl() {
@@ -6,6 +6,10 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.Stream;
+
 /**
  * This goal calls {@code dotnet pack} creating nuget packages ({@code *.nupgk}). The goal will
  * call dotnet with {@code --no-build} as the project was already built in the {@code compile} phase
@@ -14,6 +18,9 @@ import org.apache.maven.plugins.annotations.Parameter;
 @Mojo(name = "pack", defaultPhase = LifecyclePhase.PACKAGE)
 public class PackMojo extends AbstractDotnetMojo {
 
+    // file systems with a coarse timestamp resolution may report a modification time before the start of dotnet pack
+    private static final long MODIFICATION_TIME_TOLERANCE_MILLIS = 2000;
+
     /**
      * This parameter specifies a description for the package created.
      */
@@ -34,6 +41,58 @@ public class PackMojo extends AbstractDotnetMojo {
             return;
         }
 
-        newExecutor().pack(vendor, description, repositoryUrl);
+        DotnetExecutor executor = newExecutor(false, isRestoreUpToDate());
+        BuildCache buildCache = buildCache();
+
+        // dotnet pack --no-build packs the binaries of the build goal - which depend on its configuration as well
+        Object buildFingerprint = pluginContext().get(BuildMojo.BUILD_FINGERPRINT_KEY);
+
+        if (buildCache != null && buildFingerprint == null) {
+
+            getLog().info("The outputs of the build goal are unknown - not using the build cache for dotnet pack");
+        }
+
+        if (buildCache == null || buildFingerprint == null) {
+
+            executor.pack(vendor, description, repositoryUrl);
+            return;
+        }
+
+        try {
+
+            String fingerprint = inputFingerprint(executor)
+                    .property("build", buildFingerprint)
+                    .property("assemblyVersion", assemblyVersion)
+                    .property("vendor", vendor)
+                    .property("description", description)
+                    .property("repositoryUrl", repositoryUrl)
+                    .compute();
+
+            if (buildCache.load(fingerprint, targetDirectory.toPath())) {
+
+                getLog().info("Restored packages from build cache - skipping dotnet pack");
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+
+            executor.pack(vendor, description, repositoryUrl);
+
+            File[] packages = targetDirectory.listFiles(file -> isPackage(file) && file.lastModified() >= start - MODIFICATION_TIME_TOLERANCE_MILLIS);
+
+            if (packages != null && packages.length > 0) {
+
+                buildCache.store(fingerprint, targetDirectory.toPath(), Stream.of(packages).map(File::toPath).toList());
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    private static boolean isPackage(File file) {
+
+        return file.isFile() && (file.getName().endsWith(".nupkg") || file.getName().endsWith(".snupkg"));
     }
 }
@@ -0,0 +1,178 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Installs package files into a local nuget repository. Next to every installed package a {@code .sha512} file
+ * contains the base64 encoded SHA-512 hash of its content - the same format nuget uses in its global packages folder.
+ * If a package with the same content is already installed, it is left untouched - so neither its modification time
+ * changes nor do caches depending on it need to be invalidated. Otherwise, the package is copied to a temporary file
+ * that is then atomically renamed, or - if enabled - hard linked.
+ */
+public class PackageInstaller {
+
+    public static final String ALGORITHM = "SHA-512";
+    public static final String CHECKSUM_SUFFIX = ".sha512";
+
+    private final boolean link;
+    private final Log log;
+
+    /**
+     * @param link whether to hard link packages instead of copying them - if the file system does not support that,
+     *             packages are copied
+     */
+    public PackageInstaller(boolean link, Log log) {
+        this.link = link;
+        this.log = log;
+    }
+
+    /**
+     * installs the given package to the given location.
+     *
+     * @param checksum the {@link #checksum(Path) checksum} of the given package
+     * @return whether the package was installed - {@code false} if an identical package was already installed
+     */
+    public boolean install(Path source, Path target, String checksum) throws IOException {
+
+        if (isInstalled(target, checksum)) {
+
+            log.info(target + " is up-to-date");
+            return false;
+        }
+
+        Files.createDirectories(target.getParent());
+
+        if (!link || !tryLink(source, target)) {
+
+            copy(source, target);
+        }
+
+        writeChecksum(target, checksum);
+
+        return true;
+    }
+
+    private boolean isInstalled(Path target, String checksum) throws IOException {
+
+        if (!Files.isRegularFile(target)) {
+
+            return false;
+        }
+
+        Path checksumFile = checksumFile(target);
+
+        String installed = Files.isRegularFile(checksumFile) ?
+                Files.readString(checksumFile, StandardCharsets.UTF_8).trim() :
+                checksum(target);
+
+        return installed.equals(checksum);
+    }
+
+    private boolean tryLink(Path source, Path target) throws IOException {
+
+        Path temporary = temporaryFile(target);
+
+        try {
+
+            Files.delete(temporary);
+            Files.createLink(temporary, source);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.debug("linked " + source + " to " + target);
+
+            return true;
+
+        } catch (IOException | UnsupportedOperationException e) {
+
+            // e.g. different file systems or a file system without hard links
+            log.debug("unable to link " + source + " to " + target + " - copying: " + e.getMessage());
+
+            return false;
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+
+        Path temporary = temporaryFile(target);
+
+        try {
+
+            Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeChecksum(Path target, String checksum) throws IOException {
+
+        Path checksumFile = checksumFile(target);
+        Path temporary = temporaryFile(checksumFile);
+
+        try {
+
+            Files.writeString(temporary, checksum, StandardCharsets.UTF_8);
+            Files.move(temporary, checksumFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Path temporaryFile(Path target) throws IOException {
+
+        return Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+    }
+
+    public static Path checksumFile(Path packageFile) {
+
+        return packageFile.resolveSibling(packageFile.getFileName() + CHECKSUM_SUFFIX);
+    }
+
+    /**
+     * @return the base64 encoded SHA-512 hash of the given file
+     */
+    public static String checksum(Path file) throws IOException {
+
+        MessageDigest digest;
+
+        try {
+
+            digest = MessageDigest.getInstance(ALGORITHM);
+
+        } catch (NoSuchAlgorithmException e) {
+
+            throw new IllegalStateException(e);
+        }
+
+        try (InputStream inputStream = Files.newInputStream(file)) {
+
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = inputStream.read(buffer)) >= 0) {
+
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+}
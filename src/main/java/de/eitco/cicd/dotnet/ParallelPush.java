@@ -0,0 +1,210 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Pushes packages to a nuget server with a bounded number of concurrent uploads. Every package is pushed - and retried
+ * - independently, so one failing package neither stops nor delays the others. Afterward, the duration and size of
+ * every push as well as the overall throughput are reported.
+ */
+public class ParallelPush {
+
+    @FunctionalInterface
+    public interface Pusher {
+
+        /**
+         * pushes the given package - retrying as appropriate.
+         *
+         * @return {@code true} if the package was pushed, {@code false} if it was skipped - e.g. because the server
+         * already has it
+         */
+        boolean push(Path nupkg) throws MojoExecutionException;
+    }
+
+    public record Result(Path file, long bytes, long millis, boolean pushed, Exception failure) {
+
+        public boolean failed() {
+            return failure != null;
+        }
+    }
+
+    private final int threads;
+    private final Log log;
+
+    /**
+     * @param threads the maximum number of packages to push concurrently
+     */
+    public ParallelPush(int threads, Log log) {
+        this.threads = Math.max(threads, 1);
+        this.log = log;
+    }
+
+    /**
+     * @return every package file ({@code *.nupkg}) located in the given directory or its subdirectories
+     */
+    public static List<Path> findPackages(File directory) throws IOException {
+
+        if (!directory.isDirectory()) {
+
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(NugetPackage.NUPKG_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * pushes all the given packages and reports the results.
+     */
+    public List<Result> push(Collection<Path> packages, Pusher pusher) throws MojoExecutionException {
+
+        if (packages.isEmpty()) {
+
+            log.info("no packages to push");
+            return List.of();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, packages.size()), runnable -> {
+
+            Thread thread = new Thread(runnable, "nuget-push-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+
+        try {
+
+            List<Future<Result>> futures = new ArrayList<>();
+
+            for (Path nupkg : packages) {
+
+                futures.add(executor.submit(() -> pushOne(nupkg, pusher)));
+            }
+
+            List<Result> results = new ArrayList<>();
+
+            for (Future<Result> future : futures) {
+
+                results.add(future.get());
+            }
+
+            report(results, (System.nanoTime() - start) / 1_000_000);
+
+            return results;
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e);
+
+        } catch (ExecutionException e) {
+
+            throw new MojoExecutionException(e.getCause());
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result pushOne(Path nupkg, Pusher pusher) {
+
+        long start = System.nanoTime();
+        long bytes = nupkg.toFile().length();
+
+        try {
+
+            boolean pushed = pusher.push(nupkg);
+
+            return new Result(nupkg, bytes, (System.nanoTime() - start) / 1_000_000, pushed, null);
+
+        } catch (MojoExecutionException | RuntimeException e) {
+
+            return new Result(nupkg, bytes, (System.nanoTime() - start) / 1_000_000, false, e);
+        }
+    }
+
+    private void report(List<Result> results, long totalMillis) {
+
+        long pushedBytes = 0;
+        int pushed = 0;
+        int skipped = 0;
+        int failed = 0;
+
+        for (Result result : results) {
+
+            String size = FileUtils.byteCountToDisplaySize(result.bytes());
+
+            if (result.failed()) {
+
+                failed++;
+                log.error("failed to push " + result.file().getFileName() + " (" + size + ", " + result.millis() + "ms): " + result.failure().getMessage());
+
+            } else if (result.pushed()) {
+
+                pushed++;
+                pushedBytes += result.bytes();
+                log.info("pushed " + result.file().getFileName() + " (" + size + ") in " + result.millis() + "ms");
+
+            } else {
+
+                skipped++;
+                log.info("skipped " + result.file().getFileName() + " (" + size + ")");
+            }
+        }
+
+        double seconds = Math.max(totalMillis, 1) / 1000.0;
+
+        log.info(String.format(
+                "pushed %d packages (%s) in %.1fs with up to %d concurrent uploads - %.2f MB/s, %d skipped, %d failed",
+                pushed, FileUtils.byteCountToDisplaySize(pushedBytes), seconds, threads, pushedBytes / 1024.0 / 1024.0 / seconds, skipped, failed
+        ));
+    }
+
+    /**
+     * @throws MojoExecutionException if any of the given results failed
+     */
+    public static void failOnErrors(List<Result> results) throws MojoExecutionException {
+
+        List<Result> failures = results.stream().filter(Result::failed).toList();
+
+        if (failures.isEmpty()) {
+
+            return;
+        }
+
+        StringBuilder message = new StringBuilder("failed to push " + failures.size() + " of " + results.size() + " packages:");
+
+        for (Result failure : failures) {
+
+            message.append("\n  ").append(failure.file().getFileName()).append(": ").append(failure.failure().getMessage());
+        }
+
+        throw new MojoExecutionException(message.toString(), failures.get(0).failure());
+    }
+}
@@ -0,0 +1,238 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the standard output and the standard error stream of a process on background threads. The last lines read
+ * are kept in a bounded ring buffer, msbuild diagnostics are recognized and reported to the maven log as warnings and
+ * errors. Unless the output is {@link #ProcessOutput(Log, int, boolean) not echoed} every line is forwarded to the
+ * maven log as well.
+ */
+class ProcessOutput {
+
+    private static final int MAX_REPORTED_DIAGNOSTICS = 1000;
+
+    /**
+     * the number of lines kept regardless of the configured tail - failures are classified by them
+     */
+    static final int MIN_KEPT_LINES = 100;
+
+    /**
+     * how long to wait for the streams to be closed after the process exited - descendants like msbuild nodes, build
+     * servers or test hosts inherit the streams and may keep them open for much longer
+     */
+    static final long DRAIN_TIMEOUT_MILLIS = 10_000;
+
+    private final Log log;
+    private final int tailLines;
+    private final int keptLines;
+    private final boolean echo;
+
+    private final ArrayDeque<String> tail;
+    private final ArrayDeque<String> standardOutput;
+    private final Set<MsBuildDiagnostic> diagnostics = new LinkedHashSet<>();
+    private final List<Thread> readers = new ArrayList<>();
+
+    private IOException failure;
+
+    /**
+     * @param log       the log to report to
+     * @param tailLines the number of lines to present should the command fail - at least {@link #MIN_KEPT_LINES} are
+     *                  kept
+     * @param echo      whether to forward every line to the log - if {@code false}, only diagnostics are reported
+     *                  (each one only once)
+     */
+    ProcessOutput(Log log, int tailLines, boolean echo) {
+        this.log = log;
+        this.tailLines = Math.max(tailLines, 0);
+        this.keptLines = Math.max(this.tailLines, MIN_KEPT_LINES);
+        this.echo = echo;
+        this.tail = new ArrayDeque<>(Math.min(this.keptLines, 1024));
+        this.standardOutput = new ArrayDeque<>(Math.min(this.keptLines, 1024));
+    }
+
+    void attach(Process process, String name) {
+
+        start(process.getInputStream(), name + "-stdout", false);
+        start(process.getErrorStream(), name + "-stderr", true);
+    }
+
+    private void start(InputStream stream, String name, boolean errorStream) {
+
+        Thread reader = new Thread(() -> read(stream, errorStream), name);
+        reader.setDaemon(true);
+        reader.start();
+
+        readers.add(reader);
+    }
+
+    private void read(InputStream stream, boolean errorStream) {
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                accept(line, errorStream);
+            }
+
+        } catch (IOException e) {
+
+            synchronized (this) {
+                failure = e;
+            }
+        }
+    }
+
+    private void accept(String line, boolean errorStream) {
+
+        MsBuildDiagnostic diagnostic = MsBuildDiagnostic.parse(line);
+
+        boolean firstOccurrence;
+
+        synchronized (this) {
+
+            append(tail, line);
+
+            if (!errorStream) {
+
+                append(standardOutput, line);
+            }
+
+            firstOccurrence = diagnostic != null && diagnostics.size() < MAX_REPORTED_DIAGNOSTICS && diagnostics.add(diagnostic);
+        }
+
+        if (diagnostic != null && (echo || firstOccurrence)) {
+
+            if (diagnostic.severity() == MsBuildDiagnostic.Severity.ERROR) {
+
+                log.error(diagnostic.present());
+
+            } else {
+
+                log.warn(diagnostic.present());
+            }
+
+            return;
+        }
+
+        if (!echo) {
+
+            return;
+        }
+
+        if (errorStream) {
+
+            log.warn(line);
+
+        } else {
+
+            log.info(line);
+        }
+    }
+
+    private void append(ArrayDeque<String> lines, String line) {
+
+        if (lines.size() == keptLines) {
+
+            lines.removeFirst();
+        }
+
+        lines.addLast(line);
+    }
+
+    /**
+     * waits for the process streams to be read completely - but at most {@link #DRAIN_TIMEOUT_MILLIS}, since processes
+     * that outlived the process may keep them open. To be called after the process exited.
+     */
+    void await() throws IOException, InterruptedException {
+
+        await(DRAIN_TIMEOUT_MILLIS);
+    }
+
+    void await(long timeoutMillis) throws IOException, InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        for (Thread reader : readers) {
+
+            reader.join(Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 1));
+
+            if (reader.isAlive()) {
+
+                log.warn("the output of the process is still open " + timeoutMillis + "ms after it exited - probably held by a " +
+                        "process it started, like an msbuild node or a test host. Continuing with the " + tail().size() +
+                        " lines read so far.");
+
+                // the readers are daemon threads, they end when the streams are closed eventually
+                return;
+            }
+        }
+
+        synchronized (this) {
+
+            if (failure != null) {
+
+                throw failure;
+            }
+        }
+    }
+
+    synchronized List<String> tail() {
+
+        return List.copyOf(tail);
+    }
+
+    /**
+     * @return the last lines read from the standard output stream only - for commands whose output is parsed
+     */
+    synchronized List<String> standardOutput() {
+
+        return List.copyOf(standardOutput);
+    }
+
+    synchronized List<MsBuildDiagnostic> diagnostics() {
+
+        return Collections.unmodifiableList(new ArrayList<>(diagnostics));
+    }
+
+    /**
+     * writes the buffered output to the log - used to present the output of a failed command, that was not echoed.
+     */
+    void report(boolean asError) {
+
+        List<String> lines = tail();
+
+        lines = lines.subList(Math.max(lines.size() - tailLines, 0), lines.size());
+
+        if (lines.isEmpty()) {
+
+            return;
+        }
+
+        String text = String.join(System.lineSeparator(), lines);
+
+        if (asError) {
+
+            log.error("last " + lines.size() + " lines of output:" + System.lineSeparator() + text);
+
+        } else {
+
+            log.debug("last " + lines.size() + " lines of output:" + System.lineSeparator() + text);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the {@code dotnet} processes currently running and destroys them - including all their descendants
+ * like msbuild worker nodes or test hosts - on request or when the jvm shuts down.
+ */
+final class ProcessTree {
+
+    private static final long GRACE_PERIOD_SECONDS = 10;
+
+    private static final Set<Process> RUNNING = ConcurrentHashMap.newKeySet();
+
+    static {
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> RUNNING.forEach(process -> destroy(process, null, Set.of())), "dotnet-process-reaper"));
+    }
+
+    private ProcessTree() {
+    }
+
+    static void register(Process process) {
+
+        RUNNING.add(process);
+    }
+
+    static void unregister(Process process) {
+
+        RUNNING.remove(process);
+    }
+
+    /**
+     * destroys the given process and all its descendants. The descendants are determined before any process is
+     * destroyed, since processes whose parent died are re-parented and could not be found afterward. Processes that do
+     * not terminate within a grace period are destroyed forcibly.
+     *
+     * @param log         the log to write a report of the processes found to - may be {@code null}
+     * @param obfuscation secrets to mask in the command lines reported
+     */
+    static void destroy(Process process, Log log, Set<String> obfuscation) {
+
+        List<ProcessHandle> tree = new ArrayList<>(process.descendants().toList());
+        tree.add(process.toHandle());
+
+        if (log != null) {
+
+            log.error("still running: " + System.lineSeparator() + tree.stream()
+                    .filter(ProcessHandle::isAlive)
+                    .map(handle -> describe(handle, obfuscation))
+                    .collect(Collectors.joining(System.lineSeparator())));
+        }
+
+        tree.forEach(ProcessHandle::destroy);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(GRACE_PERIOD_SECONDS);
+
+        for (ProcessHandle handle : tree) {
+
+            long remaining = deadline - System.nanoTime();
+
+            try {
+
+                if (remaining > 0) {
+
+                    handle.onExit().get(remaining, TimeUnit.NANOSECONDS);
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                break;
+
+            } catch (Exception e) {
+
+                // the process did not terminate in time - it is destroyed forcibly below
+            }
+        }
+
+        tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+    }
+
+    static String describe(ProcessHandle handle, Set<String> obfuscation) {
+
+        ProcessHandle.Info info = handle.info();
+
+        String commandLine = info.commandLine().or(info::command).orElse("<unknown>");
+
+        for (String secret : obfuscation) {
+
+            if (!secret.isEmpty()) {
+
+                commandLine = commandLine.replace(secret, "****");
+            }
+        }
+
+        return "  pid " + handle.pid() +
+                info.totalCpuDuration().map(Duration::toMillis).map(millis -> ", cpu " + millis + "ms").orElse("") +
+                ": " + commandLine;
+    }
+}
@@ -0,0 +1,81 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This goal removes outdated snapshot versions from the local nuget repository: only the {@link #keepSnapshots} newest
+ * snapshot versions of every package id are kept, snapshot versions not used for {@link #maxSnapshotAgeDays} days are
+ * removed and, if the repository exceeds {@link #localRepositoryMaxSize}, the least recently used snapshot versions
+ * are removed. Release versions are always kept. Removed packages are also removed from nuget's global packages folder.
+ * Packages are renamed away before they are deleted, so the goal is safe to run while other builds read the repository.
+ */
+@Mojo(name = "purge-local", requiresProject = false)
+public class PurgeLocalMojo extends AbstractDotnetMojo {
+
+    @Override
+    public void execute() throws MojoExecutionException {
+
+        if (skip) {
+            getLog().info("Skipping execution");
+            return;
+        }
+
+        File localNugetRepository = getResolvedNugetRepoDirectory();
+
+        if (!localNugetRepository.isDirectory()) {
+
+            getLog().info("local nuget repository " + localNugetRepository + " does not exist");
+            return;
+        }
+
+        LocalNugetRepository repository = new LocalNugetRepository(localNugetRepository.toPath(), getLog());
+
+        try {
+
+            // flat packages would make nuget treat the whole repository as flat feed
+            if (!repository.flatPackages().isEmpty()) {
+
+                getLog().info("migrated " + repository.migrate() + " packages of " + localNugetRepository + " to the hierarchical layout");
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+
+        purge(repository, purgePolicy(), getGlobalPackagesDirectory(), getLog());
+    }
+
+    /**
+     * @return the number of packages removed
+     */
+    static int purge(LocalNugetRepository repository, LocalNugetRepository.PurgePolicy policy, File globalPackages, Log log) throws MojoExecutionException {
+
+        try {
+
+            List<LocalNugetRepository.Entry> purged = repository.purge(policy, globalPackages != null ? globalPackages.toPath() : null);
+
+            long size = purged.stream().mapToLong(LocalNugetRepository.Entry::size).sum();
+
+            log.info("purged " + purged.size() + " snapshot versions (" + FileUtils.byteCountToDisplaySize(size) + ") from " + repository.root());
+
+            for (LocalNugetRepository.Entry entry : purged) {
+
+                log.debug("purged " + entry.id() + " " + entry.version());
+            }
+
+            return purged.size();
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * This goal calls {@code dotnet restore} on the current project once, so that the following goals - {@code build},
+ * {@code test} and {@code pack} - can call {@code dotnet} with {@code --no-restore}. A hash of everything that
+ * influences the restore - project and solution files, {@code *.props} and {@code *.targets} files, lock files, nuget
+ * configurations, the properties given to {@code dotnet} and the sdk configured - is stored in the
+ * {@link #targetDirectory target directory}. If it did not change and every project still has its
+ * {@code obj/project.assets.json}, the restore is skipped. If the project uses lock files ({@code packages.lock.json})
+ * the restore is done in locked mode.
+ */
+@Mojo(name = "restore", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+public class RestoreMojo extends AbstractDotnetMojo {
+
+    public static final String FINGERPRINT_FILE_NAME = "restore.fingerprint";
+    public static final String LOCK_FILE_NAME = "packages.lock.json";
+    public static final String ASSETS_FILE_NAME = "project.assets.json";
+
+    /**
+     * suffixes of the lower case names of project files the {@code dotnet} cli restores
+     */
+    public static final List<String> PROJECT_FILE_SUFFIXES = List.of(".csproj", ".vbproj", ".fsproj");
+
+    private static final List<String> RESTORE_INPUT_SUFFIXES = List.of(
+            ".csproj", ".vbproj", ".fsproj", ".sln", ".slnf", ".props", ".targets"
+    );
+
+    private static final Set<String> RESTORE_INPUT_NAMES = Set.of(LOCK_FILE_NAME, "nuget.config", "global.json");
+
+    /**
+     * This parameter specifies whether to call {@code dotnet restore} even if its inputs did not change since the
+     * last restore.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.forceRestore")
+    private boolean forceRestore;
+
+    /**
+     * This parameter specifies whether to restore in locked mode - failing if the dependencies do not match the
+     * {@code packages.lock.json} files. If not set, locked mode is used whenever the project contains a lock file.
+     */
+    @Parameter(property = "dotnet.lockedMode")
+    private Boolean lockedMode;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+
+        if (skip) {
+            getLog().info("Skipping execution");
+            return;
+        }
+
+        try {
+
+            File fingerprintFile = getRestoreFingerprintFile();
+
+            if (!forceRestore && isRestoreUpToDate()) {
+
+                getLog().info("Restore inputs did not change since the last restore - skipping dotnet restore");
+                return;
+            }
+
+            // a failed restore must never be considered up-to-date
+            if (fingerprintFile.exists() && !fingerprintFile.delete()) {
+
+                throw new IOException("unable to delete " + fingerprintFile);
+            }
+
+            String fingerprint = restoreFingerprint().compute();
+
+            newExecutor().restore(lockedMode != null ? lockedMode : hasLockFile());
+
+            BuildFingerprint.store(fingerprintFile, fingerprint);
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    private boolean hasLockFile() throws IOException {
+
+        return !findFiles(workingDirectory, targetDirectory, name -> name.equals(LOCK_FILE_NAME)).isEmpty();
+    }
+
+    /**
+     * @param lowerCaseName the lower case name of a file
+     * @return whether a file of the given name may influence {@code dotnet restore}
+     */
+    static boolean isRestoreInput(String lowerCaseName) {
+
+        return RESTORE_INPUT_NAMES.contains(lowerCaseName) || RESTORE_INPUT_SUFFIXES.stream().anyMatch(lowerCaseName::endsWith);
+    }
+
+    private static boolean isProjectFile(String lowerCaseName) {
+
+        return PROJECT_FILE_SUFFIXES.stream().anyMatch(lowerCaseName::endsWith);
+    }
+
+    /**
+     * @return whether every project below the given working directory has an assets file - without it, any
+     * {@code dotnet} command called with {@code --no-restore} would fail.
+     */
+    static boolean assetsFilesExist(File workingDirectory, File targetDirectory) throws IOException {
+
+        List<Path> projectFiles = findFiles(workingDirectory, targetDirectory, RestoreMojo::isProjectFile);
+
+        return !projectFiles.isEmpty() && projectFiles.stream()
+                .allMatch(projectFile -> Files.isRegularFile(projectFile.resolveSibling("obj").resolve(ASSETS_FILE_NAME)));
+    }
+
+    private static List<Path> findFiles(File workingDirectory, File targetDirectory, Predicate<String> lowerCaseNameFilter) throws IOException {
+
+        Path base = workingDirectory.toPath().toAbsolutePath().normalize();
+        Path target = targetDirectory.toPath().toAbsolutePath().normalize();
+
+        if (!Files.isDirectory(base)) {
+
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.walk(base)) {
+
+            return files
+                    .filter(file -> !file.startsWith(target))
+                    .filter(file -> !isExcluded(base.relativize(file)))
+                    .filter(file -> lowerCaseNameFilter.test(file.getFileName().toString().toLowerCase()))
+                    .filter(Files::isRegularFile)
+                    .toList();
+        }
+    }
+
+    private static boolean isExcluded(Path relativePath) {
+
+        for (int index = 0; index < relativePath.getNameCount() - 1; index++) {
+
+            if (BuildFingerprint.EXCLUDED_DIRECTORIES.contains(relativePath.getName(index).toString())) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
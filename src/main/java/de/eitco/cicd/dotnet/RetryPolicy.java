@@ -0,0 +1,171 @@
+package de.eitco.cicd.dotnet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a failed {@code dotnet} command is worth another attempt and how long to wait before it. Failures
+ * are classified by the output of the command: problems reaching a nuget feed and files locked by concurrently
+ * running processes are considered transient, compiler errors and failing tests are not. Only transient failures are
+ * retried - with exponential backoff and jitter.
+ */
+public class RetryPolicy {
+
+    public enum FailureClass {
+
+        /**
+         * network or nuget feed problems, e.g. an unreachable service index or a http 5xx response
+         */
+        TRANSIENT(true),
+        /**
+         * files locked by another process - typical for concurrent builds sharing output directories
+         */
+        FILE_ACCESS(true),
+        /**
+         * errors reported by msbuild, the compiler or other build tools
+         */
+        BUILD(false),
+        /**
+         * failing tests
+         */
+        TEST(false),
+        /**
+         * failures that could not be classified
+         */
+        UNKNOWN(false);
+
+        private final boolean retryable;
+
+        FailureClass(boolean retryable) {
+            this.retryable = retryable;
+        }
+
+        public boolean retryable() {
+            return retryable;
+        }
+    }
+
+    public static final String BUILD = "build";
+    public static final String CLEAN = "clean";
+    public static final String RESTORE = "restore";
+    public static final String PUSH = "push";
+    public static final String UPSERT_NUGET_SOURCE = "upsertNugetSource";
+
+    /**
+     * the number of retries per operation if not configured otherwise
+     */
+    public static final Map<String, Integer> DEFAULT_RETRIES = Map.of(BUILD, 1, CLEAN, 1, RESTORE, 2, PUSH, 2);
+
+    private static final List<Pattern> TRANSIENT_PATTERNS = List.of(
+            Pattern.compile("\\bNU1301\\b"),
+            Pattern.compile("\\bNU1801\\b"),
+            Pattern.compile("Unable to load the service index", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("Response status code does not indicate success: (408|429|5\\d\\d)"),
+            Pattern.compile("An error occurred while sending the request", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("The SSL connection could not be established", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("The (HTTP )?request .* (has )?timed out", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("connection (was )?(reset|refused|closed)", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("Temporary failure in name resolution|Name or service not known|No such host is known", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("Failed to download package", Pattern.CASE_INSENSITIVE)
+    );
+
+    private static final List<Pattern> FILE_ACCESS_PATTERNS = List.of(
+            Pattern.compile("\\b(MSB3021|MSB3026|MSB3027|CS2012)\\b"),
+            Pattern.compile("being used by another process", Pattern.CASE_INSENSITIVE)
+    );
+
+    private static final Pattern TEST_FAILURE_PATTERN = Pattern.compile("^\\s*(Failed!\\s+-\\s+Failed:|Failed\\s+\\S+\\s+\\[)");
+
+    private final Map<String, Integer> retries;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param retries            the number of retries per operation - operations not contained are not retried
+     * @param initialDelayMillis the delay before the first retry
+     * @param maxDelayMillis     the maximum delay between two attempts
+     */
+    public RetryPolicy(Map<String, Integer> retries, long initialDelayMillis, long maxDelayMillis) {
+        this.retries = Map.copyOf(retries);
+        this.initialDelayMillis = Math.max(initialDelayMillis, 0);
+        this.maxDelayMillis = Math.max(maxDelayMillis, this.initialDelayMillis);
+    }
+
+    public int retries(String operation) {
+
+        return Math.max(retries.getOrDefault(operation, 0), 0);
+    }
+
+    public FailureClass classify(Collection<String> output) {
+
+        boolean fileAccess = false;
+        boolean build = false;
+        boolean test = false;
+
+        for (String line : output) {
+
+            if (TRANSIENT_PATTERNS.stream().anyMatch(pattern -> pattern.matcher(line).find())) {
+
+                // a failed restore usually causes follow-up compiler errors - so transient failures take precedence
+                return FailureClass.TRANSIENT;
+            }
+
+            MsBuildDiagnostic diagnostic = MsBuildDiagnostic.parse(line);
+
+            if (FILE_ACCESS_PATTERNS.stream().anyMatch(pattern -> pattern.matcher(line).find())) {
+
+                // msbuild warns about every copy it retries itself (MSB3026) - only a failed one is a file access problem
+                fileAccess |= diagnostic == null || diagnostic.severity() == MsBuildDiagnostic.Severity.ERROR;
+                continue;
+            }
+
+            build |= diagnostic != null && diagnostic.severity() == MsBuildDiagnostic.Severity.ERROR;
+            test |= TEST_FAILURE_PATTERN.matcher(line).find();
+        }
+
+        // a real error is not cured by retrying - even if some files were locked as well
+        if (build) {
+
+            return FailureClass.BUILD;
+        }
+
+        if (fileAccess) {
+
+            return FailureClass.FILE_ACCESS;
+        }
+
+        if (test) {
+
+            return FailureClass.TEST;
+        }
+
+        return FailureClass.UNKNOWN;
+    }
+
+    /**
+     * @param attempt the number of the attempt that failed, starting with 1
+     * @return the time to wait before the next attempt: the exponentially growing base delay, randomly reduced by up
+     * to one half
+     */
+    public long delayMillis(int attempt) {
+
+        long delay = initialDelayMillis;
+
+        for (int index = 1; index < attempt && delay < maxDelayMillis; index++) {
+
+            delay *= 2;
+        }
+
+        delay = Math.min(delay, maxDelayMillis);
+
+        if (delay <= 1) {
+
+            return delay;
+        }
+
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
@@ -0,0 +1,94 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.SessionData;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Computes values - or performs work - at most once per maven session. The first goal asking for a key computes the
+ * value, goals of other modules asking for the same key later or concurrently (with {@code -T}) wait for and reuse its
+ * result. Failures are not cached: goals waiting for a computation that failed as well as goals asking for the key later
+ * try again themselves. Like the {@link DotnetBuildServer} registry, the values are kept in the session data of the
+ * repository session, which outlives the plugin realm of a single module - so only jdk types may be stored.
+ */
+final class SessionCache {
+
+    static final String SESSION_KEY = SessionCache.class.getName() + ".values";
+
+    @FunctionalInterface
+    interface Computation<T> {
+
+        T compute() throws MojoExecutionException;
+    }
+
+    private SessionCache() {
+    }
+
+    /**
+     * @param key a key that identifies the value completely - e.g. a hash of every parameter the computation depends
+     *            on
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T get(MavenSession session, String key, Computation<T> computation) throws MojoExecutionException {
+
+        ConcurrentMap<String, CompletableFuture<Object>> values = values(session);
+
+        while (true) {
+
+            CompletableFuture<Object> created = new CompletableFuture<>();
+            CompletableFuture<Object> existing = values.putIfAbsent(key, created);
+
+            if (existing != null) {
+
+                try {
+
+                    return (T) existing.join();
+
+                } catch (CompletionException | CancellationException e) {
+
+                    // the failed computation was removed already - compute the value ourselves
+                    continue;
+                }
+            }
+
+            try {
+
+                T result = computation.compute();
+
+                created.complete(result);
+
+                return result;
+
+            } catch (MojoExecutionException | RuntimeException | Error e) {
+
+                values.remove(key, created);
+                created.completeExceptionally(e);
+
+                throw e;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, CompletableFuture<Object>> values(MavenSession session) {
+
+        SessionData data = session.getRepositorySession().getData();
+
+        ConcurrentMap<String, CompletableFuture<Object>> values = (ConcurrentMap<String, CompletableFuture<Object>>) data.get(SESSION_KEY);
+
+        if (values != null) {
+
+            return values;
+        }
+
+        data.set(SESSION_KEY, null, new ConcurrentHashMap<>());
+
+        return (ConcurrentMap<String, CompletableFuture<Object>>) data.get(SESSION_KEY);
+    }
+}
@@ -0,0 +1,538 @@
+package de.eitco.cicd.dotnet;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts a {@code trx} file to a junit report in a single pass, without building a tree of either document. Test
+ * cases are written to a temporary file as they are read, the {@code testsuite} element - whose attributes contain
+ * the counts known only at the end - is written afterward, followed by the content of the temporary file. Captured
+ * output, messages and stack traces are truncated to a configurable length, so the memory needed does not depend on
+ * the size of the {@code trx} file - apart from the duration kept per test. Several {@code trx} files - e.g. of
+ * concurrent test runs - can be merged into one report the same way, summing up the durations per test class and
+ * assembly.
+ * <p>
+ * The report has the same structure as the one created by the {@link TestResultConverter#XSL_TRANSFORMATION
+ * stylesheet}. Additionally, it contains the failure message, the captured standard output and error of every test
+ * case and the durations in seconds.
+ */
+public class StreamingTrxConverter {
+
+    /**
+     * the test class and assembly of tests that have no definition in the trx file
+     */
+    public static final String UNKNOWN = "unknown";
+
+    private static final String OUTCOME_FAILED = "Failed";
+    private static final String OUTCOME_NOT_EXECUTED = "NotExecuted";
+
+    private static final XMLInputFactory INPUT_FACTORY = inputFactory();
+    /**
+     * the jdk implementation - the test cases of a suite are written as a sequence of elements without a root and the
+     * start tag of a suite is left open, which validating implementations like woodstox refuse
+     */
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newDefaultFactory();
+
+    private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maxOutputLength;
+
+    /**
+     * @param maxOutputLength the maximum number of characters of captured output, messages and stack traces written
+     *                        per test case - negative for no limit
+     */
+    public StreamingTrxConverter(int maxOutputLength) {
+        this.maxOutputLength = maxOutputLength;
+    }
+
+    private static XMLInputFactory inputFactory() {
+
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * a test case while it is being read - its texts bounded to the configured length
+     */
+    private final class TestCase {
+
+        private final String className;
+        private final String name;
+        private final String duration;
+        private final String outcome;
+
+        private final BoundedText message = new BoundedText(maxOutputLength);
+        private final BoundedText stackTrace = new BoundedText(maxOutputLength);
+        private final BoundedText standardOutput = new BoundedText(maxOutputLength);
+        private final BoundedText standardError = new BoundedText(maxOutputLength);
+
+        private TestCase(XMLStreamReader reader) {
+            className = attribute(reader, "testId");
+            name = attribute(reader, "testName");
+            duration = attribute(reader, "duration");
+            outcome = attribute(reader, "outcome");
+        }
+
+        private BoundedText text(List<String> path) {
+
+            if (path.equals(List.of("Output", "ErrorInfo", "Message"))) {
+                return message;
+            }
+
+            if (path.equals(List.of("Output", "ErrorInfo", "StackTrace"))) {
+                return stackTrace;
+            }
+
+            if (path.equals(List.of("Output", "StdOut"))) {
+                return standardOutput;
+            }
+
+            if (path.equals(List.of("Output", "StdErr"))) {
+                return standardError;
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * accumulates text up to a maximum length, counting what exceeds it
+     */
+    static final class BoundedText {
+
+        private final int maxLength;
+        private final StringBuilder text = new StringBuilder();
+        private long omitted;
+
+        BoundedText(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        void append(char[] characters, int start, int length) {
+
+            int accepted = maxLength < 0 ? length : Math.max(0, Math.min(length, maxLength - text.length()));
+
+            text.append(characters, start, accepted);
+            omitted += length - accepted;
+        }
+
+        boolean isEmpty() {
+            return text.isEmpty() && omitted == 0;
+        }
+
+        @Override
+        public String toString() {
+
+            return omitted == 0 ? text.toString() : text + "\n... (" + omitted + " characters omitted)";
+        }
+    }
+
+    /**
+     * the aggregated counts of one or more test runs
+     *
+     * @param classDurations    the summed durations, in seconds, of the tests of every test class
+     * @param assemblyDurations the summed durations, in seconds, of the tests of every test assembly
+     */
+    public record Totals(int tests, int failures, int skipped, Map<String, Double> classDurations, Map<String, Double> assemblyDurations) {
+    }
+
+    /**
+     * converts the given trx file to a junit report. The report is written to a temporary file that replaces the given
+     * target only when it is complete.
+     */
+    public void convert(Path trxFile, Path junitFile) throws IOException, XMLStreamException {
+
+        Path temporary = temporaryFile(junitFile, ".tmp");
+
+        try {
+
+            try (OutputStream outputStream = Files.newOutputStream(temporary)) {
+
+                outputStream.write(XML_DECLARATION);
+                writeSuite(trxFile, outputStream, junitFile);
+            }
+
+            Files.move(temporary, junitFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * converts all the given trx files to one junit report - containing a {@code testsuite} element per trx file in a
+     * {@code testsuites} element. The report is written to a temporary file that replaces the given target only when it
+     * is complete.
+     *
+     * @return the counts of all given test runs
+     */
+    public Totals merge(String name, Collection<Path> trxFiles, Path junitFile) throws IOException, XMLStreamException {
+
+        Path suites = temporaryFile(junitFile, ".suites");
+        Path temporary = temporaryFile(junitFile, ".tmp");
+
+        try {
+
+            int tests = 0;
+            int failures = 0;
+            int skipped = 0;
+
+            Map<String, Double> classDurations = new TreeMap<>();
+            Map<String, Double> assemblyDurations = new TreeMap<>();
+
+            try (OutputStream outputStream = Files.newOutputStream(suites)) {
+
+                for (Path trxFile : trxFiles) {
+
+                    Summary summary = writeSuite(trxFile, outputStream, junitFile);
+
+                    tests += summary.tests;
+                    failures += summary.failures;
+                    skipped += summary.skipped;
+
+                    summary.addDurations(classDurations, assemblyDurations);
+                }
+            }
+
+            try (OutputStream outputStream = Files.newOutputStream(temporary)) {
+
+                outputStream.write(XML_DECLARATION);
+
+                XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, StandardCharsets.UTF_8.name());
+
+                writer.writeStartElement("testsuites");
+                writer.writeAttribute("errors", "0");
+                writer.writeAttribute("name", name);
+                writer.writeAttribute("tests", String.valueOf(tests));
+                writer.writeAttribute("failures", String.valueOf(failures));
+                writer.writeAttribute("skipped", String.valueOf(skipped));
+                // closes the start tag, so the test suites can be appended as they are
+                writer.writeCharacters("\n");
+                writer.flush();
+                writer.close();
+
+                Files.copy(suites, outputStream);
+
+                outputStream.write("</testsuites>\n".getBytes(StandardCharsets.UTF_8));
+            }
+
+            Files.move(temporary, junitFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return new Totals(tests, failures, skipped, classDurations, assemblyDurations);
+
+        } finally {
+
+            Files.deleteIfExists(suites);
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Path temporaryFile(Path junitFile, String suffix) throws IOException {
+
+        return Files.createTempFile(junitFile.toAbsolutePath().getParent(), "." + junitFile.getFileName(), suffix);
+    }
+
+    /**
+     * writes the {@code testsuite} element for the given trx file to the given stream
+     */
+    private Summary writeSuite(Path trxFile, OutputStream outputStream, Path junitFile) throws IOException, XMLStreamException {
+
+        Path body = temporaryFile(junitFile, ".body");
+
+        try {
+
+            Summary summary;
+
+            try (InputStream inputStream = Files.newInputStream(trxFile); OutputStream bodyStream = Files.newOutputStream(body)) {
+
+                XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+                XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(bodyStream, StandardCharsets.UTF_8.name());
+
+                try {
+
+                    summary = readTestRun(reader, writer);
+                    writer.flush();
+
+                } finally {
+
+                    writer.close();
+                    reader.close();
+                }
+            }
+
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, StandardCharsets.UTF_8.name());
+
+            writer.writeStartElement("testsuite");
+            writer.writeAttribute("errors", "0");
+            writer.writeAttribute("name", summary.name);
+            writer.writeAttribute("tests", String.valueOf(summary.tests));
+            writer.writeAttribute("failures", String.valueOf(summary.failures));
+            writer.writeAttribute("skipped", String.valueOf(summary.skipped));
+            writer.writeAttribute("timestamp", summary.timestamp);
+            // closes the start tag, so the test cases can be appended as they are
+            writer.writeCharacters("\n");
+            writer.flush();
+            writer.close();
+
+            Files.copy(body, outputStream);
+
+            outputStream.write("</testsuite>\n".getBytes(StandardCharsets.UTF_8));
+
+            return summary;
+
+        } finally {
+
+            Files.deleteIfExists(body);
+        }
+    }
+
+    private static final class Summary {
+
+        private String name = "";
+        private String timestamp = "";
+        private int tests;
+        private int failures;
+        private int skipped;
+
+        // the durations of the results and the definitions of the tests, joined by test id at the end
+        private final Map<String, Double> durations = new HashMap<>();
+        private final Map<String, String> classNames = new HashMap<>();
+        private final Map<String, String> assemblies = new HashMap<>();
+
+        private void addDurations(Map<String, Double> classDurations, Map<String, Double> assemblyDurations) {
+
+            durations.forEach((testId, seconds) -> {
+
+                classDurations.merge(classNames.getOrDefault(testId, UNKNOWN), seconds, Double::sum);
+                assemblyDurations.merge(assemblies.getOrDefault(testId, UNKNOWN), seconds, Double::sum);
+            });
+        }
+    }
+
+    private Summary readTestRun(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+
+        Summary summary = new Summary();
+
+        // the local names of the elements from the root to the current element
+        List<String> path = new ArrayList<>();
+
+        TestCase testCase = null;
+        BoundedText text = null;
+        String definition = null;
+
+        while (reader.hasNext()) {
+
+            switch (reader.next()) {
+
+                case XMLStreamConstants.START_ELEMENT -> {
+
+                    path.add(reader.getLocalName());
+
+                    if (path.equals(List.of("TestRun"))) {
+
+                        summary.name = attribute(reader, "name");
+
+                    } else if (path.equals(List.of("TestRun", "Times"))) {
+
+                        summary.timestamp = attribute(reader, "creation");
+
+                    } else if (path.equals(List.of("TestRun", "Results", "UnitTestResult"))) {
+
+                        testCase = new TestCase(reader);
+
+                        double seconds = parseSeconds(testCase.duration);
+
+                        if (!Double.isNaN(seconds)) {
+
+                            summary.durations.merge(testCase.className, seconds, Double::sum);
+                        }
+
+                    } else if (path.equals(List.of("TestRun", "TestDefinitions", "UnitTest"))) {
+
+                        definition = attribute(reader, "id");
+
+                    } else if (path.equals(List.of("TestRun", "TestDefinitions", "UnitTest", "TestMethod")) && definition != null) {
+
+                        summary.classNames.put(definition, testClassName(attribute(reader, "className")));
+                        summary.assemblies.put(definition, assemblyName(attribute(reader, "codeBase")));
+
+                    } else if (testCase != null) {
+
+                        // nested results of data driven tests are not reported separately - as by the stylesheet
+                        text = testCase.text(path.subList(3, path.size()));
+                    }
+                }
+
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+
+                    if (text != null) {
+
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+
+                case XMLStreamConstants.END_ELEMENT -> {
+
+                    text = null;
+
+                    if (testCase != null && path.size() == 3) {
+
+                        summary.tests++;
+
+                        if (OUTCOME_FAILED.equals(testCase.outcome)) {
+
+                            summary.failures++;
+
+                        } else if (OUTCOME_NOT_EXECUTED.equals(testCase.outcome)) {
+
+                            summary.skipped++;
+                        }
+
+                        writeTestCase(writer, testCase);
+                        testCase = null;
+                    }
+
+                    path.remove(path.size() - 1);
+                }
+
+                default -> {
+                }
+            }
+        }
+
+        return summary;
+    }
+
+    private static void writeTestCase(XMLStreamWriter writer, TestCase testCase) throws XMLStreamException {
+
+        writer.writeCharacters("    ");
+        writer.writeStartElement("testcase");
+        writer.writeAttribute("className", testCase.className);
+        writer.writeAttribute("name", testCase.name);
+        writer.writeAttribute("time", seconds(testCase.duration));
+
+        if (OUTCOME_FAILED.equals(testCase.outcome)) {
+
+            writer.writeCharacters("\n        ");
+            writer.writeStartElement("failure");
+            writer.writeAttribute("message", testCase.message.toString());
+            writer.writeCharacters(testCase.stackTrace.toString());
+            writer.writeEndElement();
+
+        } else if (OUTCOME_NOT_EXECUTED.equals(testCase.outcome)) {
+
+            writer.writeCharacters("\n        ");
+            writer.writeEmptyElement("skipped");
+        }
+
+        writeText(writer, "system-out", testCase.standardOutput);
+        writeText(writer, "system-err", testCase.standardError);
+
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+    }
+
+    private static void writeText(XMLStreamWriter writer, String element, BoundedText text) throws XMLStreamException {
+
+        if (text.isEmpty()) {
+
+            return;
+        }
+
+        writer.writeCharacters("\n        ");
+        writer.writeStartElement(element);
+        writer.writeCharacters(text.toString());
+        writer.writeEndElement();
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) {
+
+        String value = reader.getAttributeValue(null, name);
+
+        return value != null ? value : "";
+    }
+
+    /**
+     * @param duration a duration as written to trx files - {@code hh:mm:ss.fffffff}
+     * @return the given duration in seconds - as expected in junit reports. Durations that cannot be parsed are
+     * returned unchanged.
+     */
+    static String seconds(String duration) {
+
+        double seconds = parseSeconds(duration);
+
+        return Double.isNaN(seconds) ? duration : String.format(Locale.ROOT, "%.3f", seconds);
+    }
+
+    /**
+     * @return the given trx duration in seconds - {@link Double#NaN} if it cannot be parsed
+     */
+    static double parseSeconds(String duration) {
+
+        String[] parts = duration.split(":");
+
+        if (parts.length != 3) {
+
+            return Double.NaN;
+        }
+
+        try {
+
+            return Long.parseLong(parts[0]) * 3600 + Long.parseLong(parts[1]) * 60 + Double.parseDouble(parts[2]);
+
+        } catch (NumberFormatException e) {
+
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return the given class name without the assembly some test frameworks qualify it with
+     */
+    private static String testClassName(String className) {
+
+        int comma = className.indexOf(',');
+
+        String result = (comma < 0 ? className : className.substring(0, comma)).trim();
+
+        return result.isEmpty() ? UNKNOWN : result;
+    }
+
+    /**
+     * @return the file name of the given assembly path without its extension
+     */
+    private static String assemblyName(String codeBase) {
+
+        String fileName = codeBase.substring(Math.max(codeBase.lastIndexOf('/'), codeBase.lastIndexOf('\\')) + 1);
+
+        if (fileName.isBlank()) {
+
+            return UNKNOWN;
+        }
+
+        return fileName.toLowerCase(Locale.ROOT).endsWith(".dll") ? fileName.substring(0, fileName.length() - 4) : fileName;
+    }
+}
@@ -0,0 +1,214 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers how long tests took in earlier builds - as an exponential moving average of the durations measured, in
+ * seconds, stored in a properties file. Every entry is identified by a key - e.g. a test project, a test class or a
+ * test assembly. Measurements are collected in memory and merged into the file when it is {@link #save() saved}: the
+ * file is read again, updated and replaced atomically while holding a lock - so concurrent builds sharing the file do
+ * not lose each others measurements. Every entry remembers the day it was last measured - entries not measured for
+ * {@link #EXPIRY_DAYS} days, e.g. of deleted tests, are dropped on the next save.
+ */
+public class TestDurationHistory {
+
+    public static final String FILE_NAME = ".maven-dotnet-test-durations.properties";
+
+    /**
+     * the weight of a new measurement in the moving average
+     */
+    public static final double SMOOTHING = 0.3;
+
+    /**
+     * the number of days after which an entry that was not measured again is forgotten
+     */
+    public static final long EXPIRY_DAYS = 30;
+
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+    private final Map<String, Double> measurements = new ConcurrentHashMap<>();
+
+    /**
+     * @param seconds the average duration
+     * @param day     the epoch day of the last measurement
+     */
+    record Entry(double seconds, long day) {
+
+        static Entry parse(String value, long today) {
+
+            int separator = value.indexOf(' ');
+
+            // entries written before days were recorded count as measured today
+            return separator < 0 ?
+                    new Entry(Double.parseDouble(value), today) :
+                    new Entry(Double.parseDouble(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+        }
+
+        @Override
+        public String toString() {
+
+            return Math.round(seconds * 1000) / 1000.0 + " " + day;
+        }
+    }
+
+    private TestDurationHistory(Path file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * @return the history stored in the given file - empty if the file does not exist
+     */
+    public static TestDurationHistory load(Path file) throws IOException {
+
+        return new TestDurationHistory(file, read(file, LocalDate.now().toEpochDay()));
+    }
+
+    private static Map<String, Entry> read(Path file, long today) throws IOException {
+
+        Map<String, Entry> result = new HashMap<>();
+
+        if (!Files.isRegularFile(file)) {
+
+            return result;
+        }
+
+        Properties properties = new Properties();
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+
+            properties.load(reader);
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+
+            try {
+
+                result.put(key, Entry.parse(properties.getProperty(key), today));
+
+            } catch (NumberFormatException e) {
+
+                // a corrupt entry is simply forgotten
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the average duration, in seconds, of the given entry - {@code null} if it has never been measured
+     */
+    public Double estimate(String key) {
+
+        Entry entry = entries.get(key);
+
+        return entry == null ? null : entry.seconds();
+    }
+
+    /**
+     * @return the average durations, in seconds, of all entries whose key starts with the given prefix
+     */
+    public Map<String, Double> estimates(String keyPrefix) {
+
+        return entries.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(keyPrefix))
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().seconds()));
+    }
+
+    /**
+     * records a measured duration of the given entry - to be merged into the history when it is saved
+     */
+    public void record(String key, double seconds) {
+
+        measurements.put(key, seconds);
+    }
+
+    static double average(Double previous, double measurement) {
+
+        return previous == null ? measurement : SMOOTHING * measurement + (1 - SMOOTHING) * previous;
+    }
+
+    /**
+     * merges the recorded measurements into the history file, dropping entries not measured for
+     * {@link #EXPIRY_DAYS} days
+     */
+    public void save() throws IOException {
+
+        save(LocalDate.now().toEpochDay());
+    }
+
+    void save(long today) throws IOException {
+
+        if (measurements.isEmpty()) {
+
+            return;
+        }
+
+        Path target = file.toAbsolutePath().normalize();
+
+        synchronized (LOCKS.computeIfAbsent(target, key -> new Object())) {
+
+            FileUtils.forceMkdir(target.getParent().toFile());
+
+            try (FileChannel channel = FileChannel.open(target.resolveSibling(target.getFileName() + LOCK_SUFFIX), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+                // the lock is released when the channel is closed
+                channel.lock();
+
+                Map<String, Entry> current = read(target, today);
+
+                current.values().removeIf(entry -> today - entry.day() > EXPIRY_DAYS);
+
+                measurements.forEach((key, seconds) -> {
+
+                    Entry previous = current.get(key);
+
+                    current.put(key, new Entry(average(previous == null ? null : previous.seconds(), seconds), today));
+                });
+
+                Properties properties = new Properties();
+
+                current.forEach((key, entry) -> properties.setProperty(key, entry.toString()));
+
+                Path temporary = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+
+                try {
+
+                    try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+
+                        properties.store(writer, "durations of dotnet tests in seconds and the epoch day they were last measured");
+                    }
+
+                    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                } finally {
+
+                    Files.deleteIfExists(temporary);
+                }
+
+                entries.clear();
+                entries.putAll(current);
+                measurements.clear();
+            }
+        }
+    }
+}
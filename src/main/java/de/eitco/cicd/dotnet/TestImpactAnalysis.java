@@ -0,0 +1,285 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Decides which test projects need to run for a change: the files changed relative to a git base revision are mapped
+ * to the projects containing them, and every test project that - directly or through {@code ProjectReference}s -
+ * depends on one of these projects is selected. A full run is required if a changed file matches one of the configured
+ * triggers - like {@code Directory.Build.props} or {@code global.json} -, belongs to a project outside the analyzed
+ * directory, since its package may be consumed by the projects in it, or lies in the analyzed directory but outside of
+ * any project, since it may be imported by any of them.
+ */
+public class TestImpactAnalysis {
+
+    private static final int GIT_TIMEOUT_SECONDS = 120;
+
+    /**
+     * @param fullRun      whether all tests need to run
+     * @param reason       why all tests need to run - or which changes selected the test projects
+     * @param testProjects the test projects to run - all of them in case of a full run
+     */
+    public record Selection(boolean fullRun, String reason, List<Path> testProjects) {
+    }
+
+    private final Path directory;
+    private final List<String> triggers;
+    private final Log log;
+
+    /**
+     * @param directory the directory containing the projects to analyze
+     * @param triggers  glob patterns of files whose change requires a full run - patterns without {@code /} are
+     *                  matched against the file name, others against the path relative to the repository root
+     */
+    public TestImpactAnalysis(Path directory, List<String> triggers, Log log) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.triggers = triggers;
+        this.log = log;
+    }
+
+    /**
+     * selects the test projects affected by the changes between the given git revision and the working tree -
+     * including uncommitted and untracked files.
+     *
+     * @param base     the revision to compare to, e.g. {@code origin/main} - changes are determined relative to the
+     *                 merge base of this revision and {@code HEAD}
+     * @param projects all projects in the analyzed directory
+     */
+    public Selection select(String base, List<Path> projects, List<Path> testProjects) throws IOException {
+
+        Path root;
+        List<Path> changedFiles = new ArrayList<>();
+
+        try {
+
+            root = Path.of(git("rev-parse", "--show-toplevel").strip()).toRealPath();
+
+            String mergeBase = git("merge-base", base, "HEAD").strip();
+
+            // with -z, file names are neither quoted nor escaped and separated by nul characters
+            for (String file : git("diff", "-z", "--name-only", "--no-renames", mergeBase).split("\0")) {
+
+                changedFiles.add(root.resolve(file));
+            }
+
+            for (String file : git("ls-files", "-z", "--others", "--exclude-standard", "--full-name").split("\0")) {
+
+                changedFiles.add(root.resolve(file));
+            }
+
+            changedFiles.removeIf(root::equals);
+
+        } catch (IOException | InvalidPathException e) {
+
+            return new Selection(true, "unable to determine changes relative to " + base + ": " + e.getMessage(), testProjects);
+        }
+
+        return select(root, changedFiles, projects, testProjects);
+    }
+
+    /**
+     * selects the test projects affected by the given changed files
+     *
+     * @param root the root of the repository - trigger patterns are matched against paths relative to it
+     */
+    Selection select(Path root, Collection<Path> changedFiles, List<Path> projects, List<Path> testProjects) throws IOException {
+
+        Path realDirectory = realPath(directory);
+
+        List<PathMatcher> fileNameTriggers = new ArrayList<>();
+        List<PathMatcher> pathTriggers = new ArrayList<>();
+
+        for (String trigger : triggers) {
+
+            (trigger.contains("/") ? pathTriggers : fileNameTriggers).add(FileSystems.getDefault().getPathMatcher("glob:" + trigger));
+        }
+
+        Set<Path> changedProjects = new LinkedHashSet<>();
+
+        for (Path changedFile : changedFiles) {
+
+            Path relative = root.relativize(changedFile);
+
+            if (fileNameTriggers.stream().anyMatch(matcher -> matcher.matches(changedFile.getFileName())) ||
+                    pathTriggers.stream().anyMatch(matcher -> matcher.matches(relative))) {
+
+                return new Selection(true, relative + " changed", testProjects);
+            }
+
+            Path project = owningProject(changedFile, root);
+
+            if (project == null) {
+
+                if (realPath(changedFile.getParent()).startsWith(realDirectory)) {
+
+                    return new Selection(true, relative + " outside of any project changed", testProjects);
+                }
+
+                continue;
+            }
+
+            if (!project.startsWith(realDirectory)) {
+
+                return new Selection(true, root.relativize(project) + " outside of " + directory + " changed", testProjects);
+            }
+
+            changedProjects.add(realDirectory.relativize(project));
+        }
+
+        if (changedProjects.isEmpty()) {
+
+            return new Selection(false, "no project changed", List.of());
+        }
+
+        Map<Path, Set<Path>> dependents = dependents(projects);
+
+        Set<Path> affected = new LinkedHashSet<>();
+        Deque<Path> queue = new ArrayDeque<>();
+
+        for (Path changedProject : changedProjects) {
+
+            queue.add(directory.resolve(changedProject).normalize());
+        }
+
+        while (!queue.isEmpty()) {
+
+            Path project = queue.poll();
+
+            if (affected.add(project)) {
+
+                queue.addAll(dependents.getOrDefault(project, Set.of()));
+            }
+        }
+
+        List<Path> selected = testProjects.stream().filter(project -> affected.contains(project.toAbsolutePath().normalize())).toList();
+
+        log.debug("changed projects: " + changedProjects + ", affected projects: " + affected);
+
+        return new Selection(false, "changed projects: " + changedProjects, selected);
+    }
+
+    private static Path realPath(Path path) throws IOException {
+
+        return Files.exists(path) ? path.toRealPath() : path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return the project containing the given file - the project file itself or the project file in the closest
+     * directory above it - {@code null} if no directory below the given root contains one. Files of deleted
+     * directories are attributed to the closest existing directory.
+     */
+    static Path owningProject(Path file, Path root) throws IOException {
+
+        if (file.getFileName().toString().endsWith(TestSharding.PROJECT_SUFFIX)) {
+
+            return realPath(file.getParent()).resolve(file.getFileName());
+        }
+
+        for (Path current = file.getParent(); current != null && current.startsWith(root); current = current.getParent()) {
+
+            if (!Files.isDirectory(current)) {
+
+                continue;
+            }
+
+            try (Stream<Path> files = Files.list(current)) {
+
+                List<Path> projects = files.filter(candidate -> candidate.getFileName().toString().endsWith(TestSharding.PROJECT_SUFFIX)).sorted().toList();
+
+                if (!projects.isEmpty()) {
+
+                    return realPath(projects.get(0));
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return for every project, the projects directly referencing it - all paths absolute and normalized
+     */
+    static Map<Path, Set<Path>> dependents(Collection<Path> projects) throws IOException {
+
+        Map<Path, Set<Path>> result = new HashMap<>();
+
+        for (Path project : projects) {
+
+            Path normalized = project.toAbsolutePath().normalize();
+
+            for (Path reference : BuildFingerprint.projectReferences(project)) {
+
+                result.computeIfAbsent(reference, key -> new LinkedHashSet<>()).add(normalized);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the standard output of the given git command - written to a temporary file, so that the timeout applies
+     * no matter how much git writes
+     */
+    private String git(String... arguments) throws IOException {
+
+        List<String> command = new ArrayList<>(List.of("git"));
+        command.addAll(List.of(arguments));
+
+        Path output = Files.createTempFile("git", ".out");
+
+        try {
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.directory(directory.toFile());
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectOutput(output.toFile());
+
+            Process process = builder.start();
+
+            try {
+
+                if (!process.waitFor(GIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+
+                    process.destroyForcibly();
+                    throw new IOException(String.join(" ", command) + " did not finish within " + GIT_TIMEOUT_SECONDS + " seconds");
+                }
+
+            } catch (InterruptedException e) {
+
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+
+            if (process.exitValue() != 0) {
+
+                throw new IOException(String.join(" ", command) + " returned code " + process.exitValue());
+            }
+
+            return Files.readString(output, StandardCharsets.UTF_8);
+
+        } finally {
+
+            Files.deleteIfExists(output);
+        }
+    }
+}
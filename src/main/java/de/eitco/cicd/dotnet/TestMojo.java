@@ -1,21 +1,21 @@
 package de.eitco.cicd.dotnet;
 
-import org.apache.maven.execution.MavenSession;
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
-import javax.xml.transform.*;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-import java.io.ByteArrayInputStream;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Objects;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
 
 
 /**
@@ -23,13 +23,16 @@ import java.util.Objects;
  * since the {@code compile} phase will already be called before the {@code test} phase. It will always configure
  * the {@code trx} logger and transform the results to a valid {@code junit} description - enabling ci servers to
  * collect the test results in the default format for maven builds. The goal will honour the reactors failure behaviour.
+ * Optionally, the test projects are split into {@link #testShards shards} tested concurrently, and only the test
+ * projects affected by the changes relative to a {@link #testImpactBase git revision} are tested.
  */
 @Mojo(name = "test", defaultPhase = LifecyclePhase.TEST)
 public class TestMojo extends AbstractDotnetMojo {
 
     public static final String REACTOR_FAILURE_BEHAVIOR_FAIL_NEVER = "FAIL_NEVER";
     public static final String TEST_RESULT_EXTENSION = "trx";
-    public static final String XSL_TRANSFORMATION = "xunit-to-junit.xsl";
+    public static final String XSL_TRANSFORMATION = TestResultConverter.XSL_TRANSFORMATION;
+    public static final String SHARD_DIRECTORY_NAME = "shards";
 
     /**
      * This parameter specifies whether to skip the tests. Note that its property is the maven default property to
@@ -44,9 +47,71 @@ public class TestMojo extends AbstractDotnetMojo {
     @Parameter(defaultValue = "target/test-results")
     private File testResultDirectory;
 
+    /**
+     * This parameter specifies whether to convert the {@code trx} test results to junit reports with the xsl
+     * stylesheet used by earlier versions of this plugin, instead of the streaming converter. The stylesheet needs
+     * memory proportional to the size of the result file and does not report captured output.
+     */
+    @Parameter(defaultValue = "false", property = "dotnet.xsltTestResultConversion")
+    private boolean xsltTestResultConversion;
 
-    @Component
-    private MavenSession session;
+    /**
+     * This parameter specifies the maximum number of characters of captured standard output and error - as well as of
+     * failure messages and stack traces - written to the junit report per test case. Longer texts are truncated. A
+     * negative value disables the limit.
+     */
+    @Parameter(defaultValue = "65536", property = "dotnet.maxTestOutputLength")
+    private int maxTestOutputLength;
+
+    /**
+     * This parameter specifies the number of shards to split the test projects into. If greater than {@code 1}, the
+     * test projects below the {@link #workingDirectory working directory} - projects setting {@code IsTestProject} or
+     * referencing {@code Microsoft.NET.Test.Sdk} - are distributed to that many shards that are tested concurrently,
+     * each project by its own {@code dotnet test} process. The results of all shards are merged into one junit report
+     * {@code TEST-<artifactId>.xml} in the {@link #testResultDirectory test result directory}. The goal fails if the
+     * tests of any project failed.
+     */
+    @Parameter(defaultValue = "0", property = "dotnet.testShards")
+    private int testShards;
+
+    /**
+     * This parameter specifies whether {@link #testShards sharded} test runs use and update the test duration history.
+     * The history - an exponential moving average of the durations of every test project, test class and test
+     * assembly - is stored in the file {@code .maven-dotnet-test-durations.properties} next to the local nuget
+     * repository, entries not measured for 30 days are dropped. Shards are then balanced by these durations, and every
+     * shard starts with its longest project.
+     */
+    @Parameter(defaultValue = "true", property = "dotnet.testDurationHistory")
+    private boolean testDurationHistory;
+
+    /**
+     * This parameter specifies a git revision - e.g. {@code origin/main} - to run only the tests affected by the
+     * changes relative to it. The files changed between the merge base of this revision and {@code HEAD} and the
+     * working tree - including uncommitted and untracked files - are mapped to the projects containing them. Only the
+     * test projects depending on one of these projects - directly or through {@code ProjectReference}s - are tested,
+     * each by its own {@code dotnet test} process and in {@link #testShards shards} if configured. All tests run if a
+     * changed file matches one of the {@link #fullTestRunTriggers}, belongs to a project outside the
+     * {@link #workingDirectory working directory} or to no project inside it, or if the changes cannot be determined.
+     */
+    @Parameter(property = "dotnet.testImpactBase")
+    private String testImpactBase;
+
+    /**
+     * This parameter specifies glob patterns of files whose change requires all tests to run when only
+     * {@link #testImpactBase affected tests} are run. Patterns without {@code /} are matched against the file name,
+     * others against the path relative to the root of the git repository.
+     */
+    @Parameter
+    private List<String> fullTestRunTriggers = List.of(
+            "*.props",
+            "*.targets",
+            "*.runsettings",
+            "global.json",
+            ".config/dotnet-tools.json",
+            "[Nn]u[Gg]et.[Cc]onfig",
+            "*.sln",
+            "pom.xml"
+    );
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -62,9 +127,27 @@ public class TestMojo extends AbstractDotnetMojo {
             return;
         }
 
-        int result = newExecutor(true).test(TEST_RESULT_EXTENSION, testResultDirectory.getPath());
+        int result;
 
-        transformResultFiles();
+        try {
+
+            if (testImpactBase != null && !testImpactBase.isBlank()) {
+
+                result = executeImpacted();
+
+            } else if (testShards > 1) {
+
+                result = executeSharded(TestSharding.findTestProjects(workingDirectory.toPath(), excludedDirectories()));
+
+            } else {
+
+                result = executeUnsharded();
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
 
         if (REACTOR_FAILURE_BEHAVIOR_FAIL_NEVER.equals(session.getReactorFailureBehavior())) {
 
@@ -79,45 +162,221 @@ public class TestMojo extends AbstractDotnetMojo {
         throw new MojoFailureException("c# test failed");
     }
 
-    private void transformResultFiles() throws MojoExecutionException {
+    private List<Path> excludedDirectories() {
 
-        File[] files = testResultDirectory.listFiles(file -> file.getName().endsWith("." + TEST_RESULT_EXTENSION));
+        return List.of(targetDirectory.toPath(), testResultDirectory.toPath());
+    }
 
-        if (files != null) {
+    private int executeUnsharded() throws MojoExecutionException {
 
-            try (InputStream resourceAsStream = getClass().getClassLoader().getResourceAsStream(XSL_TRANSFORMATION)) {
+        int result = newExecutor(true, isRestoreUpToDate()).test(TEST_RESULT_EXTENSION, testResultDirectory.getPath());
 
-                byte[] transformationBytes = Objects.requireNonNull(resourceAsStream, () -> "resource " + XSL_TRANSFORMATION + " not found").readAllBytes();
+        transformResultFiles();
+
+        return result;
+    }
 
-                for (File file : files) {
+    private int executeImpacted() throws MojoExecutionException, IOException {
 
-                    StreamSource xsltSource = new StreamSource(new ByteArrayInputStream(transformationBytes));
-                    transformToJUnit(file, xsltSource);
-                }
+        List<Path> projects = TestSharding.findProjects(workingDirectory.toPath(), excludedDirectories());
+        List<Path> testProjects = new ArrayList<>();
 
-            } catch (IOException e) {
-                throw new MojoExecutionException(e);
+        for (Path project : projects) {
+
+            if (TestSharding.isTestProject(project)) {
+
+                testProjects.add(project);
             }
         }
+
+        TestImpactAnalysis.Selection selection = new TestImpactAnalysis(workingDirectory.toPath(), fullTestRunTriggers, getLog())
+                .select(testImpactBase, projects, testProjects);
+
+        if (selection.fullRun()) {
+
+            getLog().info("running all tests - " + selection.reason());
+
+            return testShards > 1 ? executeSharded(testProjects) : executeUnsharded();
+        }
+
+        if (selection.testProjects().isEmpty()) {
+
+            getLog().info("no test project is affected by the changes relative to " + testImpactBase + " - " + selection.reason());
+            return 0;
+        }
+
+        getLog().info("testing " + selection.testProjects().size() + " of " + testProjects.size() + " test projects affected by the changes relative to " +
+                testImpactBase + " - " + selection.reason());
+
+        return executeSharded(selection.testProjects());
     }
 
-    private void transformToJUnit(File file, StreamSource xsltSource) throws MojoExecutionException {
+    private int executeSharded(List<Path> projects) throws MojoExecutionException {
 
         try {
 
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            if (projects.isEmpty()) {
 
-            Templates templates = transformerFactory.newTemplates(xsltSource);
-            Transformer transformer = templates.newTransformer();
+                getLog().warn("no test projects found in " + workingDirectory + " - testing without shards");
 
-            Source xmlSource = new StreamSource(file);
-            Result result = new StreamResult(new File(file.getAbsolutePath() + ".xml"));
+                return executeUnsharded();
+            }
+
+            TestDurationHistory history = testDurationHistory ? TestDurationHistory.load(getTestDurationHistoryFile().toPath()) : null;
+
+            List<List<Path>> shards = TestSharding.balance(projects, estimator(history, projects), testShards);
+
+            // results of earlier runs would be merged otherwise
+            File shardDirectory = new File(testResultDirectory, SHARD_DIRECTORY_NAME);
+            FileUtils.deleteDirectory(shardDirectory);
+
+            getLog().info("testing " + projects.size() + " projects in " + shards.size() + " shards");
+
+            List<TestSharding.ShardResult> results = new TestSharding(shards.size(), getLog()).run(
+                    newExecutor(true, isRestoreUpToDate()),
+                    shards,
+                    shardDirectory
+            );
+
+            File report = new File(testResultDirectory, "TEST-" + session.getCurrentProject().getArtifactId() + ".xml");
+
+            StreamingTrxConverter.Totals totals = new StreamingTrxConverter(maxTestOutputLength).merge(
+                    session.getCurrentProject().getArtifactId(),
+                    TestSharding.resultFiles(results),
+                    report.toPath()
+            );
 
-            transformer.transform(xmlSource, result);
+            getLog().info("tests run: " + totals.tests() + ", failures: " + totals.failures() + ", skipped: " + totals.skipped() + " - report written to " + report);
+
+            if (history != null) {
+
+                recordDurations(history, results, totals);
+            }
+
+            boolean failed = false;
+
+            for (TestSharding.ShardResult shard : results) {
+
+                getLog().info("shard " + shard.index() + ": " + shard.projects().size() + " projects in " + shard.millis() + "ms");
+
+                for (Path project : shard.failed()) {
+
+                    getLog().error("tests of " + project + " failed");
+                    failed = true;
+                }
+            }
+
+            return failed || totals.failures() > 0 ? 1 : 0;
+
+        } catch (IOException | XMLStreamException e) {
 
-        } catch (TransformerException e) {
             throw new MojoExecutionException(e);
         }
+    }
+
+    private File getTestDurationHistoryFile() {
+
+        return new File(getResolvedNugetRepoDirectory().getParentFile(), TestDurationHistory.FILE_NAME);
+    }
+
+    private String historyKey(String kind, String name) {
+
+        return session.getCurrentProject().getGroupId() + ":" + session.getCurrentProject().getArtifactId() + "|" + kind + "|" + name;
+    }
+
+    private String projectKey(Path project) {
+
+        return historyKey("project", workingDirectory.toPath().relativize(project).toString().replace('\\', '/'));
+    }
+
+    /**
+     * @return the known duration of testing the given project - measured for the project itself or else, e.g. after the
+     * project was moved, summed from its test assembly or the test classes in its root namespace.
+     * Assembly and namespace are assumed to be named after the project file, as dotnet does by default.
+     */
+    private Double estimate(TestDurationHistory history, Path project) {
+
+        Double estimate = history.estimate(projectKey(project));
+
+        if (estimate != null) {
+
+            return estimate;
+        }
+
+        String name = project.getFileName().toString();
+        name = name.substring(0, name.length() - TestSharding.PROJECT_SUFFIX.length());
+
+        estimate = history.estimate(historyKey("assembly", name));
+
+        if (estimate != null) {
+
+            return estimate;
+        }
+
+        Map<String, Double> classes = history.estimates(historyKey("class", name.replace('-', '_') + "."));
+
+        return classes.isEmpty() ? null : classes.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    /**
+     * @return the expected duration of testing each project - projects without any known duration are expected to take
+     * as long as the average known project, if there is no history at all every project is expected to take the same
+     * time
+     */
+    private ToDoubleFunction<Path> estimator(TestDurationHistory history, List<Path> projects) {
+
+        if (history == null) {
+
+            return project -> 1;
+        }
+
+        Map<Path, Double> estimates = new HashMap<>();
+
+        for (Path project : projects) {
+
+            Double estimate = estimate(history, project);
+
+            if (estimate != null) {
+
+                estimates.put(project, estimate);
+            }
+        }
+
+        double fallback = estimates.values().stream()
+                .mapToDouble(Double::doubleValue)
+                .average()
+                .orElse(1);
+
+        return project -> estimates.getOrDefault(project, fallback);
+    }
+
+    private void recordDurations(TestDurationHistory history, List<TestSharding.ShardResult> results, StreamingTrxConverter.Totals totals) {
+
+        for (TestSharding.ShardResult shard : results) {
+
+            shard.durations().forEach((project, millis) -> history.record(projectKey(project), millis / 1000.0));
+        }
+
+        totals.classDurations().forEach((name, seconds) -> history.record(historyKey("class", name), seconds));
+        totals.assemblyDurations().forEach((name, seconds) -> history.record(historyKey("assembly", name), seconds));
+
+        try {
+
+            history.save();
+
+        } catch (IOException e) {
+
+            getLog().warn("failed to save test duration history " + getTestDurationHistoryFile(), e);
+        }
+    }
+
+    private void transformResultFiles() throws MojoExecutionException {
+
+        File[] files = testResultDirectory.listFiles(file -> file.getName().endsWith("." + TEST_RESULT_EXTENSION));
+
+        if (files != null) {
 
+            new TestResultConverter(Runtime.getRuntime().availableProcessors(), xsltTestResultConversion, maxTestOutputLength, getLog()).convert(List.of(files));
+        }
     }
 }
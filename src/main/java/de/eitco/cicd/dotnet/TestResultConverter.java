@@ -0,0 +1,264 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Converts test results written by {@code dotnet test} in the {@code trx} format to junit xml reports - next to the
+ * {@code trx} file, with {@code .xml} appended to its name. By default, the files are converted by the
+ * {@link StreamingTrxConverter} needing constant memory. Alternatively, the original stylesheet can be used - it is
+ * compiled once per jvm and shared by all conversions. Result files are converted concurrently, and only if their
+ * report does not exist, is older than the result file or was converted with other settings - so result files left
+ * over from earlier runs are not converted again.
+ */
+public class TestResultConverter {
+
+    public static final String XSL_TRANSFORMATION = "xunit-to-junit.xsl";
+    public static final String JUNIT_SUFFIX = ".xml";
+
+    /**
+     * the name of the file recording how the reports in a directory were converted - changing the converter or its
+     * settings makes all of them outdated
+     */
+    public static final String SETTINGS_FILE_NAME = ".trx-to-junit";
+
+    private static Templates templates;
+
+    private final int threads;
+    private final boolean useStylesheet;
+    private final int maxOutputLength;
+    private final StreamingTrxConverter streamingConverter;
+    private final Log log;
+
+    /**
+     * @param threads         the maximum number of result files to convert concurrently
+     * @param useStylesheet   whether to convert with the stylesheet instead of the {@link StreamingTrxConverter}
+     * @param maxOutputLength the maximum length of captured output per test case - see {@link StreamingTrxConverter}
+     */
+    public TestResultConverter(int threads, boolean useStylesheet, int maxOutputLength, Log log) {
+        this.threads = Math.max(threads, 1);
+        this.useStylesheet = useStylesheet;
+        this.maxOutputLength = maxOutputLength;
+        this.streamingConverter = new StreamingTrxConverter(maxOutputLength);
+        this.log = log;
+    }
+
+    /**
+     * @return the compiled stylesheet converting trx files to junit reports - compiled on first use
+     */
+    static synchronized Templates templates() throws MojoExecutionException {
+
+        if (templates != null) {
+
+            return templates;
+        }
+
+        try (InputStream stylesheet = TestResultConverter.class.getClassLoader().getResourceAsStream(XSL_TRANSFORMATION)) {
+
+            Objects.requireNonNull(stylesheet, () -> "resource " + XSL_TRANSFORMATION + " not found");
+
+            templates = TransformerFactory.newInstance().newTemplates(new StreamSource(stylesheet));
+
+            return templates;
+
+        } catch (IOException | TransformerConfigurationException e) {
+
+            throw new MojoExecutionException(e);
+        }
+    }
+
+    public static File junitFile(File trxFile) {
+
+        return new File(trxFile.getAbsolutePath() + JUNIT_SUFFIX);
+    }
+
+    /**
+     * @return whether the junit report of the given result file exists and is not older than the result file
+     */
+    static boolean isUpToDate(File trxFile) {
+
+        File junitFile = junitFile(trxFile);
+
+        return junitFile.isFile() && junitFile.lastModified() >= trxFile.lastModified();
+    }
+
+    /**
+     * @return a description of the converter and its settings - reports converted with other settings are outdated
+     */
+    String settings() {
+
+        return useStylesheet ? "stylesheet" : "streaming maxOutputLength=" + maxOutputLength;
+    }
+
+    private boolean isConvertedWithSettings(File directory) {
+
+        File settingsFile = new File(directory, SETTINGS_FILE_NAME);
+
+        try {
+
+            return settingsFile.isFile() && Files.readString(settingsFile.toPath(), StandardCharsets.UTF_8).trim().equals(settings());
+
+        } catch (IOException e) {
+
+            return false;
+        }
+    }
+
+    /**
+     * converts every given result file whose junit report is not {@link #isUpToDate(File) up-to-date} or was converted
+     * with other {@link #settings() settings}
+     *
+     * @return the number of result files converted
+     */
+    public int convert(Collection<File> trxFiles) throws MojoExecutionException {
+
+        Set<File> directories = trxFiles.stream().map(file -> file.getAbsoluteFile().getParentFile()).collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<File> otherSettings = directories.stream().filter(directory -> !isConvertedWithSettings(directory)).collect(Collectors.toSet());
+
+        List<File> outdated = trxFiles.stream()
+                .filter(file -> otherSettings.contains(file.getAbsoluteFile().getParentFile()) || !isUpToDate(file))
+                .toList();
+
+        log.debug((trxFiles.size() - outdated.size()) + " test result files are already converted");
+
+        convertAll(outdated);
+
+        try {
+
+            for (File directory : otherSettings) {
+
+                Files.writeString(new File(directory, SETTINGS_FILE_NAME).toPath(), settings(), StandardCharsets.UTF_8);
+            }
+
+        } catch (IOException e) {
+
+            throw new MojoExecutionException(e);
+        }
+
+        return outdated.size();
+    }
+
+    private void convertAll(List<File> outdated) throws MojoExecutionException {
+
+        if (outdated.isEmpty()) {
+
+            return;
+        }
+
+        Templates compiled = useStylesheet ? templates() : null;
+
+        if (outdated.size() == 1) {
+
+            convert(compiled, outdated.get(0));
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, outdated.size()), runnable -> {
+
+            Thread thread = new Thread(runnable, "trx-to-junit-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (File file : outdated) {
+
+                futures.add(executor.submit(() -> {
+                    convert(compiled, file);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+
+                future.get();
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e);
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof MojoExecutionException mojoExecutionException) {
+
+                throw mojoExecutionException;
+            }
+
+            throw new MojoExecutionException(e.getCause());
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    private void convert(Templates compiled, File trxFile) throws MojoExecutionException {
+
+        try {
+
+            if (compiled != null) {
+
+                Path junitFile = junitFile(trxFile).toPath();
+
+                // a partial report would be newer than the result file - and never be converted again
+                Path temporary = Files.createTempFile(junitFile.getParent(), "." + junitFile.getFileName(), ".tmp");
+
+                try {
+
+                    // transformers are not thread safe - the compiled templates are
+                    compiled.newTransformer().transform(new StreamSource(trxFile), new StreamResult(temporary.toFile()));
+
+                    Files.move(temporary, junitFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                } finally {
+
+                    Files.deleteIfExists(temporary);
+                }
+
+            } else {
+
+                streamingConverter.convert(trxFile.toPath(), junitFile(trxFile).toPath());
+            }
+
+            log.debug("converted " + trxFile + " to junit report");
+
+        } catch (TransformerException | XMLStreamException | IOException e) {
+
+            throw new MojoExecutionException("unable to convert " + trxFile + ": " + e.getMessage(), e);
+        }
+    }
+}
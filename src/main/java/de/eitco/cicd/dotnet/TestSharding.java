@@ -0,0 +1,291 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Splits the test projects below a directory into shards and tests the shards concurrently - one {@code dotnet test}
+ * process per project, the projects of a shard one after another. Every shard writes its results to a directory of
+ * its own.
+ */
+public class TestSharding {
+
+    public static final String PROJECT_SUFFIX = ".csproj";
+
+    private static final Set<String> IGNORED_DIRECTORIES = Set.of("bin", "obj", "target", "node_modules");
+
+    private static final Pattern TEST_PROJECT_PATTERN = Pattern.compile(
+            "<IsTestProject>\\s*true\\s*</IsTestProject>|Include=\"Microsoft\\.NET\\.Test\\.Sdk\"",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final Pattern NO_TEST_PROJECT_PATTERN = Pattern.compile("<IsTestProject>\\s*false\\s*</IsTestProject>", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * @param index     the number of the shard - starting at {@code 0}
+     * @param failed    the projects whose tests failed - or that could not be tested
+     * @param directory the directory the shard wrote its results to
+     * @param durations the time, in milliseconds, testing each project took
+     */
+    public record ShardResult(int index, List<Path> projects, List<Path> failed, long millis, File directory, Map<Path, Long> durations) {
+    }
+
+    private final int threads;
+    private final Log log;
+
+    public TestSharding(int threads, Log log) {
+        this.threads = Math.max(threads, 1);
+        this.log = log;
+    }
+
+    /**
+     * @return every test project below the given directory - a project is a test project if it sets
+     * {@code IsTestProject} or references {@code Microsoft.NET.Test.Sdk}. Build output directories and the given
+     * excluded directories are not searched.
+     */
+    public static List<Path> findTestProjects(Path directory, Collection<Path> excluded) throws IOException {
+
+        List<Path> projects = new ArrayList<>();
+
+        for (Path project : findProjects(directory, excluded)) {
+
+            if (isTestProject(project)) {
+
+                projects.add(project);
+            }
+        }
+
+        return projects;
+    }
+
+    /**
+     * @return every project below the given directory - build output directories and the given excluded directories
+     * are not searched
+     */
+    public static List<Path> findProjects(Path directory, Collection<Path> excluded) throws IOException {
+
+        List<Path> excludedPaths = excluded.stream().map(path -> path.toAbsolutePath().normalize()).toList();
+        List<Path> projects = new ArrayList<>();
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+
+                if (!dir.equals(directory) && (name.startsWith(".") || IGNORED_DIRECTORIES.contains(name.toLowerCase(Locale.ROOT)) ||
+                        excludedPaths.contains(dir.toAbsolutePath().normalize()))) {
+
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                if (file.getFileName().toString().endsWith(PROJECT_SUFFIX)) {
+
+                    projects.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        projects.sort(Comparator.naturalOrder());
+
+        return projects;
+    }
+
+    static boolean isTestProject(Path project) throws IOException {
+
+        String content = Files.readString(project, StandardCharsets.UTF_8);
+
+        return TEST_PROJECT_PATTERN.matcher(content).find() && !NO_TEST_PROJECT_PATTERN.matcher(content).find();
+    }
+
+    /**
+     * distributes the given items to at most the given number of shards, so that the shards take about the same
+     * time: the items are assigned in order of decreasing weight, each to the shard with the least weight so far. Within
+     * a shard, the items are ordered by decreasing weight - so the longest work starts first. Items of equal weight keep
+     * their order.
+     *
+     * @param weight the expected duration of an item
+     */
+    public static <Type> List<List<Type>> balance(List<Type> items, ToDoubleFunction<Type> weight, int shards) {
+
+        List<Type> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingDouble(weight).reversed());
+
+        int count = Math.max(1, Math.min(shards, sorted.size()));
+
+        List<List<Type>> result = new ArrayList<>();
+        double[] loads = new double[count];
+
+        for (int index = 0; index < count; index++) {
+
+            result.add(new ArrayList<>());
+        }
+
+        for (Type item : sorted) {
+
+            int lightest = 0;
+
+            for (int index = 1; index < count; index++) {
+
+                if (loads[index] < loads[lightest]) {
+
+                    lightest = index;
+                }
+            }
+
+            result.get(lightest).add(item);
+            loads[lightest] += weight.applyAsDouble(item);
+        }
+
+        result.removeIf(List::isEmpty);
+
+        return result;
+    }
+
+    /**
+     * tests the given shards concurrently. The results of shard {@code n} are written to {@code shard-n} below the given
+     * directory.
+     */
+    public List<ShardResult> run(DotnetExecutor executor, List<List<Path>> shards, File resultDirectory) throws MojoExecutionException {
+
+        if (shards.isEmpty()) {
+
+            return List.of();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(threads, shards.size()), runnable -> {
+
+            Thread thread = new Thread(runnable, "dotnet-test-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+
+            List<Future<ShardResult>> futures = new ArrayList<>();
+
+            for (int index = 0; index < shards.size(); index++) {
+
+                int shardIndex = index;
+                List<Path> projects = shards.get(index);
+                File directory = new File(resultDirectory, "shard-" + shardIndex);
+
+                futures.add(executorService.submit(() -> runShard(executor, shardIndex, projects, directory)));
+            }
+
+            List<ShardResult> results = new ArrayList<>();
+
+            for (Future<ShardResult> future : futures) {
+
+                results.add(future.get());
+            }
+
+            return results;
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e);
+
+        } catch (ExecutionException e) {
+
+            throw new MojoExecutionException(e.getCause());
+
+        } finally {
+
+            executorService.shutdownNow();
+        }
+    }
+
+    private ShardResult runShard(DotnetExecutor executor, int index, List<Path> projects, File directory) {
+
+        long start = System.nanoTime();
+        List<Path> failed = new ArrayList<>();
+        Map<Path, Long> durations = new LinkedHashMap<>();
+
+        for (Path project : projects) {
+
+            log.info("shard " + index + ": testing " + project.getFileName());
+
+            long projectStart = System.nanoTime();
+
+            try {
+
+                if (executor.test(TestMojo.TEST_RESULT_EXTENSION, directory.getPath(), project.toFile(), "test-shard-" + index) != 0) {
+
+                    failed.add(project);
+                }
+
+            } catch (MojoExecutionException e) {
+
+                log.error("shard " + index + ": failed to test " + project.getFileName() + ": " + e.getMessage());
+                failed.add(project);
+            }
+
+            durations.put(project, (System.nanoTime() - projectStart) / 1_000_000);
+        }
+
+        return new ShardResult(index, projects, failed, (System.nanoTime() - start) / 1_000_000, directory, durations);
+    }
+
+    /**
+     * @return every trx file the given shards wrote
+     */
+    public static List<Path> resultFiles(List<ShardResult> results) throws IOException {
+
+        List<Path> files = new ArrayList<>();
+
+        for (ShardResult result : results) {
+
+            if (!result.directory().isDirectory()) {
+
+                continue;
+            }
+
+            try (Stream<Path> stream = Files.walk(result.directory().toPath())) {
+
+                stream.filter(Files::isRegularFile)
+                        .filter(file -> file.getFileName().toString().endsWith("." + TestMojo.TEST_RESULT_EXTENSION))
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+
+        return files;
+    }
+}
@@ -0,0 +1,69 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryLogReportTest {
+
+    private static final String LOG = """
+            Target "CoreCompile" in file "/sdk/Microsoft.CSharp.Core.targets" from project "/src/a.csproj":
+            Building target "CoreCompile" completely.
+            Input file "/src/A.cs" is newer than output file "obj/Release/a.dll".
+            Skipping target "GenerateAssemblyInfo" because all output files are up-to-date with respect to the input files.
+                  Total analyzer execution time: 0.412 seconds.
+                     Time (s)    %   Analyzer
+                        0.300   72   Microsoft.CodeAnalysis.NetAnalyzers, Version=8.0.0.0
+                        0.112   27   Microsoft.CodeAnalysis.CSharp.NetAnalyzers, Version=8.0.0.0
+
+            Build succeeded.
+
+            Project Evaluation Performance Summary:
+                  212 ms  /src/a.csproj                              1 calls
+                   54 ms  /src/b.csproj                              1 calls
+
+            Project Performance Summary:
+                 3120 ms  /src/a.sln                                 1 calls
+
+            Target Performance Summary:
+                    2 ms  GenerateAssemblyInfo                       1 calls
+                 1890 ms  CoreCompile                                2 calls
+                  410 ms  ResolvePackageAssets                       2 calls
+
+            Task Performance Summary:
+                 1880 ms  Csc                                        2 calls
+                    3 ms  Message                                   14 calls
+            """;
+
+    @Test
+    void parsesPerformanceSummaryAndTargetReasons(@TempDir File directory) throws IOException {
+
+        Path textLog = directory.toPath().resolve("build-binlog.log");
+        Files.writeString(textLog, LOG);
+
+        BinaryLogReport report = BinaryLogReport.parse(textLog);
+
+        assertEquals(List.of("CoreCompile", "ResolvePackageAssets"), report.slowestTargets(2).stream().map(BinaryLogReport.Entry::name).toList());
+        assertEquals(1890, report.slowestTargets(1).get(0).millis());
+        assertEquals("Csc", report.slowestTasks(1).get(0).name());
+        assertEquals("/src/a.csproj", report.slowestProjectEvaluations(1).get(0).name());
+        assertEquals(3120, report.slowestProjects(1).get(0).millis());
+        assertEquals(300, report.slowestAnalyzers(1).get(0).millis());
+        assertEquals(1, report.skippedTargets());
+        assertEquals("Input file \"/src/A.cs\" is newer than output file \"obj/Release/a.dll\".", report.rebuiltTargets().get("CoreCompile"));
+
+        Path reportFile = directory.toPath().resolve("report.txt");
+        report.write(reportFile, "dotnet build", 5);
+
+        String written = Files.readString(reportFile);
+        assertTrue(written.contains("slowest targets:"), written);
+        assertTrue(written.contains("CoreCompile: Input file"), written);
+    }
+}
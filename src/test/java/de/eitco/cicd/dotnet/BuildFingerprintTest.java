@@ -0,0 +1,109 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildFingerprintTest {
+
+    @Test
+    void fingerprintChangesWithSourcesAndPropertiesOnly(@TempDir File directory) throws IOException {
+
+        Path project = directory.toPath().resolve("project");
+        Files.createDirectories(project.resolve("bin"));
+        Files.createDirectories(project.resolve("obj"));
+        Files.writeString(project.resolve("a.csproj"), "<Project Sdk=\"Microsoft.NET.Sdk\"/>");
+        Files.writeString(project.resolve("A.cs"), "class A {}");
+
+        String initial = new BuildFingerprint(project.toFile()).property("version", "1.0.0").compute();
+
+        assertEquals(initial, new BuildFingerprint(project.toFile()).property("version", "1.0.0").compute());
+
+        Files.writeString(project.resolve("bin").resolve("a.dll"), "binary");
+        Files.writeString(project.resolve("obj").resolve("project.assets.json"), "{}");
+
+        assertEquals(initial, new BuildFingerprint(project.toFile()).property("version", "1.0.0").compute(), "outputs must not be inputs");
+        assertNotEquals(initial, new BuildFingerprint(project.toFile()).property("version", "1.0.1").compute());
+
+        Files.writeString(project.resolve("A.cs"), "class A { }");
+
+        assertNotEquals(initial, new BuildFingerprint(project.toFile()).property("version", "1.0.0").compute());
+    }
+
+    @Test
+    void inheritedFilesOfParentDirectoriesAreInputs(@TempDir File directory) throws IOException {
+
+        Path project = directory.toPath().resolve("project");
+        Files.createDirectories(project);
+        Files.writeString(project.resolve("A.cs"), "class A {}");
+
+        String initial = new BuildFingerprint(project.toFile()).compute();
+
+        Files.writeString(directory.toPath().resolve("unrelated.txt"), "text");
+
+        assertEquals(initial, new BuildFingerprint(project.toFile()).compute());
+
+        Files.writeString(directory.toPath().resolve("Directory.Build.props"), "<Project/>");
+
+        assertNotEquals(initial, new BuildFingerprint(project.toFile()).compute());
+    }
+
+    @Test
+    void resolvedDependenciesAreInputs(@TempDir File directory) throws IOException {
+
+        Path root = directory.toPath();
+        Path project = Files.createDirectories(root.resolve("project"));
+        Path library = Files.createDirectories(root.resolve("library"));
+        Path packages = Files.createDirectories(root.resolve("packages/my.package/1.0.0-snapshot"));
+
+        Files.writeString(project.resolve("a.csproj"), "<Project><ItemGroup><ProjectReference Include=\"..\\library\\b.csproj\" /></ItemGroup></Project>");
+        Files.writeString(library.resolve("b.csproj"), "<Project Sdk=\"Microsoft.NET.Sdk\"/>");
+        Files.writeString(library.resolve("B.cs"), "class B {}");
+        Files.writeString(packages.resolve("my.package.1.0.0-snapshot.nupkg.sha512"), "first");
+
+        Files.createDirectories(project.resolve("obj"));
+        Files.writeString(project.resolve(BuildFingerprint.ASSETS_FILE), """
+                {
+                  "version": 3,
+                  "libraries": {
+                    "My.Package/1.0.0-SNAPSHOT": { "sha512": "first", "type": "package", "path": "my.package/1.0.0-snapshot" }
+                  },
+                  "packageFolders": { "%s": {} }
+                }
+                """.formatted(root.resolve("packages").toString().replace("\\", "\\\\")));
+
+        String initial = new BuildFingerprint(project.toFile()).resolvedDependencies().compute();
+
+        assertEquals(initial, new BuildFingerprint(project.toFile()).resolvedDependencies().compute());
+        assertNotEquals(initial, new BuildFingerprint(project.toFile()).compute());
+
+        Files.writeString(packages.resolve("my.package.1.0.0-snapshot.nupkg.sha512"), "second");
+
+        String reinstalled = new BuildFingerprint(project.toFile()).resolvedDependencies().compute();
+
+        assertNotEquals(initial, reinstalled, "a snapshot package installed again is a change");
+
+        Files.writeString(library.resolve("B.cs"), "class B { }");
+
+        assertNotEquals(reinstalled, new BuildFingerprint(project.toFile()).resolvedDependencies().compute(), "referenced projects are inputs");
+    }
+
+    @Test
+    void storedFingerprintMatches(@TempDir File directory) throws IOException {
+
+        File file = new File(new File(directory, "dot-net"), BuildMojo.FINGERPRINT_FILE_NAME);
+
+        assertFalse(BuildFingerprint.matches(file, "abc"));
+
+        BuildFingerprint.store(file, "abc");
+
+        assertTrue(BuildFingerprint.matches(file, "abc"));
+        assertFalse(BuildFingerprint.matches(file, "abd"));
+    }
+}
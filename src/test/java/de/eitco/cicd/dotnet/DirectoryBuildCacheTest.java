@@ -0,0 +1,93 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryBuildCacheTest {
+
+    @Test
+    void storedOutputsAreRestored(@TempDir File directory) throws IOException {
+
+        Path workspace = directory.toPath().resolve("workspace");
+        Path output = workspace.resolve("src/bin/Release/a.dll");
+        Files.createDirectories(output.getParent());
+        Files.writeString(output, "binary");
+
+        DirectoryBuildCache cache = new DirectoryBuildCache(directory.toPath().resolve("cache"), 0, new SystemStreamLog());
+
+        assertFalse(cache.load("abcdef", workspace));
+
+        cache.store("abcdef", workspace, List.of(output));
+
+        Path otherWorkspace = directory.toPath().resolve("other");
+
+        assertTrue(cache.load("abcdef", otherWorkspace));
+        assertEquals("binary", Files.readString(otherWorkspace.resolve("src/bin/Release/a.dll")));
+    }
+
+    @Test
+    void corruptEntriesAreDeletedWithoutRestoringAnything(@TempDir File directory) throws IOException {
+
+        Path workspace = directory.toPath().resolve("workspace");
+        Path first = workspace.resolve("bin/a.dll");
+        Path second = workspace.resolve("bin/b.dll");
+        Files.createDirectories(first.getParent());
+        Files.writeString(first, "first");
+        Files.write(second, new byte[64 * 1024]);
+
+        Path root = directory.toPath().resolve("cache");
+        DirectoryBuildCache cache = new DirectoryBuildCache(root, 0, new SystemStreamLog());
+
+        cache.store("abcdef", workspace, List.of(first, second));
+
+        Path entry = root.resolve("ab/abcdef.zip");
+        byte[] content = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(content, content.length / 2));
+
+        Path otherWorkspace = directory.toPath().resolve("other");
+
+        assertFalse(cache.load("abcdef", otherWorkspace));
+        assertFalse(Files.exists(entry), "the corrupt entry should be deleted");
+
+        try (var files = Files.list(otherWorkspace)) {
+
+            assertEquals(List.of(), files.toList());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted(@TempDir File directory) throws IOException {
+
+        Path workspace = directory.toPath().resolve("workspace");
+        Path output = workspace.resolve("a.nupkg");
+        Files.createDirectories(workspace);
+        Files.write(output, new byte[4096]);
+
+        Path root = directory.toPath().resolve("cache");
+        DirectoryBuildCache unlimited = new DirectoryBuildCache(root, 0, new SystemStreamLog());
+
+        unlimited.store("aa0001", workspace, List.of(output));
+        unlimited.store("bb0002", workspace, List.of(output));
+
+        Files.setLastModifiedTime(root.resolve("aa/aa0001.zip"), FileTime.fromMillis(1000));
+
+        long entrySize = Files.size(root.resolve("bb/bb0002.zip"));
+
+        new DirectoryBuildCache(root, entrySize * 2, new SystemStreamLog()).store("cc0003", workspace, List.of(output));
+
+        assertFalse(Files.exists(root.resolve("aa/aa0001.zip")), "least recently used entry should be evicted");
+        assertTrue(Files.exists(root.resolve("bb/bb0002.zip")));
+        assertTrue(Files.exists(root.resolve("cc/cc0003.zip")));
+    }
+}
@@ -0,0 +1,44 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvocationRecorderTest {
+
+    @Test
+    void timelineIsExtendedByOneEntryPerInvocation(@TempDir File directory) throws IOException {
+
+        File timeline = new File(new File(directory, "dot-net"), InvocationRecorder.TIMELINE_FILE_NAME);
+        InvocationRecorder recorder = new InvocationRecorder("module-a", timeline, new SystemStreamLog());
+
+        recorder.start("build", "dotnet build -p:Version=1.0.0", 1).finish(0);
+        recorder.start("nuget push", "dotnet nuget push --api-key ****", 2).finish(1);
+
+        String content = Files.readString(timeline.toPath()).trim();
+
+        assertTrue(content.startsWith("["), content);
+        assertTrue(content.endsWith("]"), content);
+        assertEquals(2, content.split("\"module\": \"module-a\"").length - 1, content);
+        assertTrue(content.contains("\"operation\": \"nuget push\""), content);
+        assertTrue(content.contains("\"command\": \"dotnet nuget push --api-key ****\""), content);
+        assertTrue(content.contains("\"exitCode\": 1, \"attempt\": 2"), content);
+        assertEquals(1, content.split("},\n").length - 1, content);
+    }
+
+    @Test
+    void noTimelineIsWrittenIfNotConfigured(@TempDir File directory) {
+
+        InvocationRecorder recorder = new InvocationRecorder("module-a", null, new SystemStreamLog());
+
+        recorder.start("build", "dotnet build", 1).finish(0);
+
+        assertEquals(0, directory.list().length);
+    }
+}
@@ -0,0 +1,134 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+public class LocalNugetRepositoryTest {
+
+    private static final String NUSPEC = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<package><metadata><id>My.Package</id><version>1.0.0-SNAPSHOT</version></metadata></package>";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void installsHierarchically() throws IOException {
+
+        Path file = NugetPackageTest.createPackage(directory.resolve("My.Package.1.0.0-SNAPSHOT.nupkg"), NUSPEC, Map.of());
+        Path root = directory.resolve("repository");
+
+        LocalNugetRepository repository = new LocalNugetRepository(root, new SystemStreamLog());
+        PackageInstaller installer = new PackageInstaller(false, new SystemStreamLog());
+
+        Assertions.assertTrue(repository.install(NugetPackage.read(file), PackageInstaller.checksum(file), installer));
+        Assertions.assertFalse(repository.install(NugetPackage.read(file), PackageInstaller.checksum(file), installer));
+
+        Path expected = root.resolve("my.package/1.0.0-snapshot");
+
+        Assertions.assertTrue(Files.isRegularFile(expected.resolve("my.package.1.0.0-snapshot.nupkg")));
+        Assertions.assertTrue(Files.isRegularFile(expected.resolve("my.package.1.0.0-snapshot.nupkg.sha512")));
+        Assertions.assertTrue(Files.isRegularFile(expected.resolve("my.package.nuspec")));
+        Assertions.assertTrue(repository.flatPackages().isEmpty());
+    }
+
+    @Test
+    public void migratesFlatPackages() throws IOException {
+
+        Path root = Files.createDirectories(directory.resolve("repository"));
+
+        NugetPackageTest.createPackage(root.resolve("My.Package.1.0.0-SNAPSHOT.nupkg"), NUSPEC, Map.of());
+        Files.writeString(root.resolve("broken.nupkg"), "not a zip file");
+
+        LocalNugetRepository repository = new LocalNugetRepository(root, new SystemStreamLog());
+
+        Assertions.assertEquals(2, repository.flatPackages().size());
+        Assertions.assertEquals(1, repository.migrate());
+
+        Assertions.assertTrue(Files.isRegularFile(root.resolve("my.package/1.0.0-snapshot/my.package.1.0.0-snapshot.nupkg")));
+        Assertions.assertTrue(Files.isRegularFile(root.resolve("my.package/1.0.0-snapshot/my.package.nuspec")));
+        Assertions.assertFalse(Files.exists(root.resolve("My.Package.1.0.0-SNAPSHOT.nupkg")));
+        Assertions.assertFalse(Files.exists(root.resolve("broken.nupkg")));
+        Assertions.assertTrue(Files.exists(root.resolve(LocalNugetRepository.UNREADABLE_DIRECTORY_NAME).resolve("broken.nupkg")));
+        Assertions.assertTrue(repository.flatPackages().isEmpty());
+    }
+
+    private static Path createEntry(Path root, String id, String version, long installed) throws IOException {
+
+        Path directory = Files.createDirectories(root.resolve(id).resolve(version));
+        Path packageFile = Files.writeString(directory.resolve(id + "." + version + ".nupkg"), id + version);
+
+        Files.writeString(PackageInstaller.checksumFile(packageFile), PackageInstaller.checksum(packageFile));
+        Files.setLastModifiedTime(packageFile, FileTime.fromMillis(installed));
+        Files.setAttribute(packageFile, "lastAccessTime", FileTime.fromMillis(installed));
+
+        return directory;
+    }
+
+    @Test
+    public void purgesOutdatedSnapshots() throws IOException {
+
+        Path root = directory.resolve("repository");
+        Path globalPackages = directory.resolve("packages");
+        long now = System.currentTimeMillis();
+
+        for (int index = 1; index <= 4; index++) {
+
+            createEntry(root, "my.package", "1.0.0-build." + index, now - (10 - index) * 1000L);
+        }
+
+        createEntry(root, "my.package", "0.9.0", 0);
+        createEntry(root, "other.package", "2.0.0-snapshot", now - 100 * 24 * 3600 * 1000L);
+
+        // the same package expanded to the global packages folder - and one from another source
+        Files.createDirectories(globalPackages.resolve("my.package/1.0.0-build.1"));
+        Files.copy(root.resolve("my.package/1.0.0-build.1/my.package.1.0.0-build.1.nupkg.sha512"), globalPackages.resolve("my.package/1.0.0-build.1/my.package.1.0.0-build.1.nupkg.sha512"));
+        Files.writeString(Files.createDirectories(globalPackages.resolve("my.package/1.0.0-build.2")).resolve("my.package.1.0.0-build.2.nupkg.sha512"), "other");
+
+        LocalNugetRepository repository = new LocalNugetRepository(root, new SystemStreamLog());
+        LocalNugetRepository.PurgePolicy policy = new LocalNugetRepository.PurgePolicy(
+                2, 30L * 24 * 3600 * 1000, 0, version -> version.endsWith("-snapshot") || version.contains("-build.")
+        );
+
+        List<String> purged = repository.purge(policy, globalPackages).stream().map(entry -> entry.id() + " " + entry.version()).sorted().toList();
+
+        Assertions.assertEquals(List.of("my.package 1.0.0-build.1", "my.package 1.0.0-build.2", "other.package 2.0.0-snapshot"), purged);
+
+        List<String> remaining = repository.entries().stream().map(LocalNugetRepository.Entry::version).sorted().toList();
+
+        Assertions.assertEquals(List.of("0.9.0", "1.0.0-build.3", "1.0.0-build.4"), remaining);
+        Assertions.assertFalse(Files.exists(globalPackages.resolve("my.package/1.0.0-build.1")));
+        Assertions.assertTrue(Files.exists(globalPackages.resolve("my.package/1.0.0-build.2")));
+
+        try (var files = Files.list(root)) {
+
+            Assertions.assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(".")));
+        }
+    }
+
+    @Test
+    public void purgesLeastRecentlyUsedSnapshotsAboveMaximumSize() throws IOException {
+
+        Path root = directory.resolve("repository");
+        long now = System.currentTimeMillis();
+
+        createEntry(root, "a", "1.0.0-snapshot", now - 3000);
+        createEntry(root, "b", "1.0.0-snapshot", now - 2000);
+        createEntry(root, "c", "1.0.0", now - 5000);
+
+        LocalNugetRepository repository = new LocalNugetRepository(root, new SystemStreamLog());
+        long maxSize = repository.entries().stream().mapToLong(LocalNugetRepository.Entry::size).sum() - 1;
+
+        List<LocalNugetRepository.Entry> purged = repository.purge(new LocalNugetRepository.PurgePolicy(-1, 0, maxSize, version -> version.endsWith("-snapshot")), null);
+
+        Assertions.assertEquals(List.of("a"), purged.stream().map(LocalNugetRepository.Entry::id).toList());
+    }
+}
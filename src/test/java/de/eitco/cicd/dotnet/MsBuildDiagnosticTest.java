@@ -0,0 +1,54 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MsBuildDiagnosticTest {
+
+    @Test
+    void parsesCompilerError() {
+        MsBuildDiagnostic diagnostic = MsBuildDiagnostic.parse(
+                "/src/main/cs/A.cs(10,5): error CS1002: ; expected [/src/main/cs/productive.csproj]");
+
+        assertNotNull(diagnostic);
+        assertEquals("/src/main/cs/A.cs", diagnostic.origin());
+        assertEquals("10,5", diagnostic.location());
+        assertEquals(MsBuildDiagnostic.Severity.ERROR, diagnostic.severity());
+        assertEquals("CS1002", diagnostic.code());
+        assertEquals("; expected", diagnostic.message());
+        assertEquals("/src/main/cs/productive.csproj", diagnostic.project());
+    }
+
+    @Test
+    void parsesWindowsPathWarning() {
+        MsBuildDiagnostic diagnostic = MsBuildDiagnostic.parse(
+                "C:\\work\\sln\\A.cs(3,18): warning CS0168: The variable 'e' is declared but never used [C:\\work\\sln\\a.csproj]");
+
+        assertNotNull(diagnostic);
+        assertEquals("C:\\work\\sln\\A.cs", diagnostic.origin());
+        assertEquals(MsBuildDiagnostic.Severity.WARNING, diagnostic.severity());
+        assertEquals("CS0168", diagnostic.code());
+        assertEquals("C:\\work\\sln\\a.csproj", diagnostic.project());
+    }
+
+    @Test
+    void parsesToolErrorWithoutLocation() {
+        MsBuildDiagnostic diagnostic = MsBuildDiagnostic.parse("MSBUILD : error MSB1009: Project file does not exist.");
+
+        assertNotNull(diagnostic);
+        assertEquals("MSBUILD", diagnostic.origin());
+        assertNull(diagnostic.location());
+        assertEquals("MSB1009", diagnostic.code());
+        assertEquals("Project file does not exist.", diagnostic.message());
+        assertNull(diagnostic.project());
+    }
+
+    @Test
+    void ignoresRegularOutput() {
+        assertNull(MsBuildDiagnostic.parse("  Determining projects to restore..."));
+        assertNull(MsBuildDiagnostic.parse("Build succeeded."));
+        assertNull(MsBuildDiagnostic.parse("    0 Warning(s)"));
+        assertNull(MsBuildDiagnostic.parse("  Error Message:"));
+    }
+}
@@ -0,0 +1,105 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class NugetConfigTest {
+
+    private static final byte[] TEMPLATE = ("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<configuration>\n" +
+            "  <packageSources>\n" +
+            "    <add key=\"nuget.org\" value=\"https://api.nuget.org/v3/index.json\" protocolVersion=\"3\" />\n" +
+            "  </packageSources>\n" +
+            "</configuration>").getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void createsMissingFileFromTemplate() throws IOException {
+
+        Path file = directory.resolve("NuGet").resolve("NuGet.Config");
+
+        Assertions.assertTrue(NugetConfig.update(file, TEMPLATE, config -> config.upsertSource("local", "/repo", null, null)));
+
+        NugetConfig config = NugetConfig.read(file);
+
+        Assertions.assertEquals(List.of("nuget.org", "local"), config.getSourceNames());
+        Assertions.assertEquals("/repo", config.getSource("local"));
+        Assertions.assertFalse(Files.exists(file.resolveSibling("NuGet.Config.tmp")));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void keepsLinksAndPermissionsAndLeavesNoLockFilesBehind() throws IOException {
+
+        Path real = directory.resolve("dotfiles").resolve("NuGet.Config");
+        Files.createDirectories(real.getParent());
+        Files.write(real, TEMPLATE);
+        Files.setPosixFilePermissions(real, PosixFilePermissions.fromString("rw-r-----"));
+
+        Path link = Files.createDirectories(directory.resolve("NuGet")).resolve("NuGet.Config");
+        Files.createSymbolicLink(link, real);
+
+        Assertions.assertTrue(NugetConfig.update(link, TEMPLATE, config -> config.upsertSource("local", "/repo", null, null)));
+
+        Assertions.assertTrue(Files.isSymbolicLink(link));
+        Assertions.assertEquals("/repo", NugetConfig.read(real).getSource("local"));
+        Assertions.assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(real)));
+
+        try (Stream<Path> files = Stream.concat(Files.list(real.getParent()), Files.list(link.getParent()))) {
+
+            Assertions.assertEquals(List.of(real, link), files.toList());
+        }
+    }
+
+    @Test
+    public void writesOnlyIfChanged() throws IOException {
+
+        Path file = directory.resolve("nuget.config");
+
+        NugetConfig.update(file, TEMPLATE, config -> config.upsertSource("local", "/repo", null, null));
+
+        Assertions.assertFalse(NugetConfig.update(file, TEMPLATE, config -> config.upsertSource("LOCAL", "/repo", null, null)));
+        Assertions.assertTrue(NugetConfig.update(file, TEMPLATE, config -> config.upsertSource("local", "/other", null, null)));
+        Assertions.assertEquals("/other", NugetConfig.read(file).getSource("local"));
+    }
+
+    @Test
+    public void storesCredentialsInClearText() throws IOException {
+
+        Path file = directory.resolve("nuget.config");
+
+        NugetConfig.update(file, TEMPLATE, config -> config.upsertSource("my feed", "https://feed", "user", "secret"));
+        // updating the url only keeps the credentials
+        NugetConfig.update(file, TEMPLATE, config -> config.upsertSource("my feed", "https://feed/v3", null, null));
+
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+
+        Assertions.assertTrue(content.contains("<my_x0020_feed>"), content);
+        Assertions.assertTrue(content.contains("key=\"Username\" value=\"user\""), content);
+        Assertions.assertTrue(content.contains("key=\"ClearTextPassword\" value=\"secret\""), content);
+        Assertions.assertTrue(content.contains("value=\"https://feed/v3\""), content);
+    }
+
+    @Test
+    public void encodesNames() {
+
+        Assertions.assertEquals("nuget.org", NugetConfig.encodeName("nuget.org"));
+        Assertions.assertEquals("my_x0020_feed", NugetConfig.encodeName("my feed"));
+        Assertions.assertEquals("_x0031_feed", NugetConfig.encodeName("1feed"));
+        Assertions.assertEquals("a_x005F_x0020_b", NugetConfig.encodeName("a_x0020_b"));
+        Assertions.assertEquals("a_xb", NugetConfig.encodeName("a_xb"));
+    }
+}
@@ -0,0 +1,102 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class NugetPackageTest {
+
+    private static final String NUSPEC = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<package xmlns=\"http://schemas.microsoft.com/packaging/2013/05/nuspec.xsd\">\n" +
+            "  <metadata>\n" +
+            "    <id>My.Package</id>\n" +
+            "    <version>1.2-SNAPSHOT</version>\n" +
+            "  </metadata>\n" +
+            "</package>";
+
+    @TempDir
+    Path directory;
+
+    static Path createPackage(Path file, String nuspec, Map<String, String> content) throws IOException {
+
+        try (OutputStream outputStream = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+
+            zip.putNextEntry(new ZipEntry("My.Package.nuspec"));
+            zip.write(nuspec.getBytes(StandardCharsets.UTF_8));
+
+            for (Map.Entry<String, String> entry : content.entrySet()) {
+
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        return file;
+    }
+
+    @Test
+    public void readsIdAndVersion() throws IOException {
+
+        NugetPackage nugetPackage = NugetPackage.read(createPackage(directory.resolve("My.Package.1.2-SNAPSHOT.nupkg"), NUSPEC, Map.of()));
+
+        Assertions.assertEquals("My.Package", nugetPackage.id());
+        Assertions.assertEquals("1.2-SNAPSHOT", nugetPackage.version());
+        Assertions.assertEquals("my.package.1.2.0-snapshot.nupkg", nugetPackage.packageFileName());
+    }
+
+    @Test
+    public void normalizesVersions() {
+
+        Assertions.assertEquals("1.0.0", NugetPackage.normalizeVersion("1.0"));
+        Assertions.assertEquals("1.0.0", NugetPackage.normalizeVersion("1.0.0.0"));
+        Assertions.assertEquals("1.0.0.4", NugetPackage.normalizeVersion("1.00.0.4"));
+        Assertions.assertEquals("2.1.0-beta.1", NugetPackage.normalizeVersion("2.1.0-Beta.1+build.7"));
+    }
+
+    @Test
+    public void expandsIntoGlobalPackagesLayout() throws IOException {
+
+        Path file = createPackage(directory.resolve("My.Package.1.2-SNAPSHOT.nupkg"), NUSPEC, Map.of(
+                "lib/net8.0/My.Package.dll", "dll",
+                "lib/net8.0/My%20Docs.xml", "docs",
+                "_rels/.rels", "rels",
+                "[Content_Types].xml", "types",
+                "package/services/metadata/core-properties/abc.psmdcp", "properties"
+        ));
+
+        NugetPackage nugetPackage = NugetPackage.read(file);
+        String checksum = PackageInstaller.checksum(file);
+        Path root = directory.resolve("packages");
+
+        Assertions.assertTrue(nugetPackage.expandInto(root, checksum, "/repo", new SystemStreamLog()));
+
+        Path expanded = root.resolve("my.package").resolve("1.2.0-snapshot");
+
+        Assertions.assertEquals("dll", Files.readString(expanded.resolve("lib/net8.0/My.Package.dll")));
+        Assertions.assertEquals("docs", Files.readString(expanded.resolve("lib/net8.0/My Docs.xml")));
+        Assertions.assertTrue(Files.isRegularFile(expanded.resolve("my.package.nuspec")));
+        Assertions.assertTrue(Files.isRegularFile(expanded.resolve("my.package.1.2.0-snapshot.nupkg")));
+        Assertions.assertEquals(checksum, Files.readString(expanded.resolve("my.package.1.2.0-snapshot.nupkg.sha512")));
+        Assertions.assertTrue(Files.readString(expanded.resolve(".nupkg.metadata")).contains("\"contentHash\": \"" + checksum + "\""));
+        Assertions.assertFalse(Files.exists(expanded.resolve("_rels")));
+        Assertions.assertFalse(Files.exists(expanded.resolve("package")));
+        Assertions.assertFalse(Files.exists(expanded.resolve("[Content_Types].xml")));
+
+        Assertions.assertFalse(nugetPackage.expandInto(root, checksum, "/repo", new SystemStreamLog()));
+
+        try (var entries = Files.list(root.resolve("my.package"))) {
+
+            Assertions.assertEquals(1, entries.count());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package de.eitco.cicd.dotnet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NugetPushClientTest {
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private String baseUrl;
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pushes = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        server.createContext("/v3/index.json", exchange -> respond(exchange, 200, """
+                {
+                  "version": "3.0.0",
+                  "resources": [
+                    { "@id": "%1$s/v3/flat/", "@type": "PackageBaseAddress/3.0.0" },
+                    { "@id": "%1$s/api/v2/package", "@type": "PackagePublish/2.0.0", "comment": "push \\"here\\"" }
+                  ]
+                }
+                """.formatted(baseUrl)));
+
+        server.createContext("/v3/flat/", exchange -> {
+
+            if (exchange.getRequestURI().getPath().equals("/v3/flat/my.package/index.json")) {
+
+                respond(exchange, 200, "{\"versions\": [\"1.0.0\", \"1.2.0.0\", \"2.0.0-Build.5\"]}");
+
+            } else {
+
+                respond(exchange, 404, "");
+            }
+        });
+
+        server.createContext("/api/v2/package", exchange -> {
+
+            byte[] body = exchange.getRequestBody().readAllBytes();
+
+            received.add(exchange.getRequestMethod() + " " + exchange.getRequestHeaders().getFirst(NugetPushClient.API_KEY_HEADER) + " " +
+                    exchange.getRequestHeaders().getFirst("Content-Type") + "\n" + new String(body, StandardCharsets.UTF_8));
+
+            // the first push fails with a server error, later ones of the same package are duplicates
+            int push = pushes.incrementAndGet();
+
+            respond(exchange, push == 1 ? 503 : push == 2 ? 201 : 409, "");
+        });
+
+        // answers with a service index revealing the api key it received
+        server.createContext("/echo/index.json", exchange -> respond(exchange, 200,
+                "{\"resources\": [{\"@id\": \"" + exchange.getRequestHeaders().getFirst(NugetPushClient.API_KEY_HEADER) + "\", \"@type\": \"PackagePublish/2.0.0\"}]}"));
+
+        server.createContext("/moved/", exchange -> {
+
+            String location = exchange.getRequestURI().getPath().equals("/moved/same/index.json") ?
+                    "/echo/index.json" :
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/echo/index.json";
+
+            exchange.getResponseHeaders().add("Location", location);
+            respond(exchange, 302, "");
+        });
+
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+
+        if (bytes.length > 0) {
+
+            exchange.getResponseBody().write(bytes);
+        }
+
+        exchange.close();
+    }
+
+    private NugetPushClient client() {
+
+        return new NugetPushClient("secret", null, null, new RetryPolicy(Map.of(RetryPolicy.PUSH, 1), 10, 10), null, new SystemStreamLog());
+    }
+
+    @Test
+    public void resolvesPublishUrlFromServiceIndex() throws MojoExecutionException {
+
+        Assertions.assertEquals(baseUrl + "/api/v2/package", client().resolvePublishUrl(baseUrl + "/v3/index.json"));
+        Assertions.assertEquals(baseUrl + "/api/v2/package", client().resolvePublishUrl(baseUrl + "/api/v2/package"));
+    }
+
+    @Test
+    public void pushesMultipartRetriesServerErrorsAndSkipsDuplicates() throws IOException, MojoExecutionException {
+
+        Path nupkg = Files.writeString(directory.resolve("test.1.0.0.nupkg"), "package content");
+
+        NugetPushClient client = client();
+        String publishUrl = client.resolvePublishUrl(baseUrl + "/v3/index.json");
+
+        Assertions.assertTrue(client.push(nupkg, publishUrl, true));
+
+        Assertions.assertEquals(2, received.size());
+
+        String request = received.get(1);
+
+        Assertions.assertTrue(request.startsWith("PUT secret multipart/form-data; boundary="), request);
+        Assertions.assertTrue(request.contains("name=\"package\""), request);
+        Assertions.assertTrue(request.contains("\r\n\r\npackage content\r\n--"), request);
+
+        Assertions.assertFalse(client.push(nupkg, publishUrl, true));
+
+        MojoExecutionException exception = Assertions.assertThrows(MojoExecutionException.class, () -> client.push(nupkg, publishUrl, false));
+
+        Assertions.assertTrue(exception.getMessage().contains("409"), exception.getMessage());
+    }
+
+    @Test
+    public void queriesPublishedVersionsFromFlatContainer() throws MojoExecutionException {
+
+        NugetPushClient client = client();
+
+        String baseAddress = client.resolveResource(baseUrl + "/v3/index.json", NugetPushClient.PACKAGE_BASE_ADDRESS_TYPE);
+
+        Assertions.assertEquals(baseUrl + "/v3/flat/", baseAddress);
+        Assertions.assertEquals(Set.of("1.0.0", "1.2.0", "2.0.0-build.5"), client.publishedVersions(baseAddress, "my.package"));
+        Assertions.assertEquals(Set.of(), client.publishedVersions(baseAddress, "other.package"));
+    }
+
+    @Test
+    public void sendsCredentialsOnlyToTheOriginalOrigin() throws MojoExecutionException {
+
+        NugetPushClient client = client();
+
+        Assertions.assertEquals("secret", client.resolveResource(baseUrl + "/moved/same/index.json", NugetPushClient.PACKAGE_PUBLISH_TYPE));
+        Assertions.assertEquals("null", client.resolveResource(baseUrl + "/moved/other/index.json", NugetPushClient.PACKAGE_PUBLISH_TYPE));
+    }
+
+    @Test
+    public void findsVersionedResourcesAndRejectsInvalidIndexes() throws MojoExecutionException {
+
+        String index = "{\"resources\": [{\"@id\": \"https://example.org/push\", \"@type\": \"PackagePublish/2.0.0/rc\"}]}";
+
+        Assertions.assertEquals("https://example.org/push", NugetPushClient.findResource(index, NugetPushClient.PACKAGE_PUBLISH_TYPE));
+        Assertions.assertNull(NugetPushClient.findResource("{\"resources\": []}", NugetPushClient.PACKAGE_PUBLISH_TYPE));
+        Assertions.assertThrows(MojoExecutionException.class, () -> NugetPushClient.findResource("{\"resources\": [", NugetPushClient.PACKAGE_PUBLISH_TYPE));
+    }
+}
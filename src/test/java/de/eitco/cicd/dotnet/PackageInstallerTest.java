@@ -0,0 +1,55 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class PackageInstallerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void skipsUnchangedPackages() throws IOException {
+
+        Path source = Files.writeString(directory.resolve("source.nupkg"), "content", StandardCharsets.UTF_8);
+        Path target = directory.resolve("repository").resolve("source.nupkg");
+
+        PackageInstaller installer = new PackageInstaller(false, new SystemStreamLog());
+
+        String checksum = PackageInstaller.checksum(source);
+
+        Assertions.assertTrue(installer.install(source, target, checksum));
+        Assertions.assertEquals(checksum, Files.readString(PackageInstaller.checksumFile(target), StandardCharsets.UTF_8));
+
+        FileTime installed = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(target, installed);
+
+        Assertions.assertFalse(installer.install(source, target, checksum));
+        Assertions.assertEquals(installed, Files.getLastModifiedTime(target));
+
+        Files.writeString(source, "changed", StandardCharsets.UTF_8);
+
+        Assertions.assertTrue(installer.install(source, target, PackageInstaller.checksum(source)));
+        Assertions.assertEquals("changed", Files.readString(target, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void linksPackages() throws IOException {
+
+        Path source = Files.writeString(directory.resolve("source.nupkg"), "content", StandardCharsets.UTF_8);
+        Path target = directory.resolve("repository").resolve("source.nupkg");
+
+        new PackageInstaller(true, new SystemStreamLog()).install(source, target, PackageInstaller.checksum(source));
+
+        Assertions.assertEquals("content", Files.readString(target, StandardCharsets.UTF_8));
+        Assertions.assertTrue(Files.isRegularFile(PackageInstaller.checksumFile(target)));
+    }
+}
@@ -0,0 +1,72 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelPushTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void pushesConcurrentlyAndIsolatesFailures() throws IOException, MojoExecutionException {
+
+        List<Path> packages = new ArrayList<>();
+
+        for (int index = 0; index < 8; index++) {
+
+            packages.add(Files.writeString(Files.createDirectories(directory.resolve("sub" + index % 2)).resolve("package" + index + ".nupkg"), "content"));
+        }
+
+        Files.writeString(directory.resolve("package.snupkg"), "symbols");
+
+        Assertions.assertEquals(8, ParallelPush.findPackages(directory.toFile()).size());
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<ParallelPush.Result> results = new ParallelPush(3, new SystemStreamLog()).push(packages, nupkg -> {
+
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+            try {
+
+                Thread.sleep(50);
+
+            } catch (InterruptedException e) {
+
+                throw new MojoExecutionException(e);
+
+            } finally {
+
+                running.decrementAndGet();
+            }
+
+            if (nupkg.getFileName().toString().equals("package3.nupkg")) {
+
+                throw new MojoExecutionException("server error");
+            }
+
+            return !nupkg.getFileName().toString().equals("package5.nupkg");
+        });
+
+        Assertions.assertEquals(8, results.size());
+        Assertions.assertTrue(maxRunning.get() <= 3, "at most 3 concurrent pushes expected, got " + maxRunning.get());
+        Assertions.assertEquals(1, results.stream().filter(ParallelPush.Result::failed).count());
+        Assertions.assertEquals(6, results.stream().filter(ParallelPush.Result::pushed).count());
+
+        MojoExecutionException exception = Assertions.assertThrows(MojoExecutionException.class, () -> ParallelPush.failOnErrors(results));
+
+        Assertions.assertTrue(exception.getMessage().contains("package3.nupkg: server error"), exception.getMessage());
+    }
+}
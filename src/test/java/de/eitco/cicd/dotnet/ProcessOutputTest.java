@@ -0,0 +1,39 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ProcessOutputTest {
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void stopsWaitingForStreamsThatStayOpen() throws Exception {
+
+        // the streams of a running process stay open - just like those inherited by a surviving descendant
+        Process process = new ProcessBuilder("sh", "-c", "echo started; exec sleep 30").start();
+
+        try {
+
+            ProcessOutput output = new ProcessOutput(new SystemStreamLog(), 10, false);
+            output.attach(process, "test");
+
+            long start = System.nanoTime();
+
+            output.await(500);
+
+            Assertions.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+            Assertions.assertTrue(process.isAlive());
+            Assertions.assertEquals(List.of("started"), output.standardOutput());
+
+        } finally {
+
+            process.destroyForcibly();
+        }
+    }
+}
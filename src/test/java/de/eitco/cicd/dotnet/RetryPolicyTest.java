@@ -0,0 +1,79 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(Map.of(RetryPolicy.BUILD, 2), 100, 1000);
+
+    @Test
+    void unreachableFeedIsTransient() {
+        assertEquals(RetryPolicy.FailureClass.TRANSIENT, policy.classify(List.of(
+                "  Determining projects to restore...",
+                "/src/a.csproj : error NU1301: Unable to load the service index for source https://nuget.example.org/v3/index.json. [/src/a.sln]",
+                "/src/A.cs(3,7): error CS0246: The type or namespace name 'Newtonsoft' could not be found [/src/a.csproj]"
+        )));
+        assertEquals(RetryPolicy.FailureClass.TRANSIENT, policy.classify(List.of(
+                "error: Response status code does not indicate success: 503 (Service Unavailable)."
+        )));
+    }
+
+    @Test
+    void lockedFilesAreRetryable() {
+        RetryPolicy.FailureClass failureClass = policy.classify(List.of(
+                "/usr/share/dotnet/sdk/8.0.404/Microsoft.Common.CurrentVersion.targets(4806,5): error MSB3027: Could not copy \"obj/a.dll\" to \"bin/a.dll\". [/src/a.csproj]"
+        ));
+
+        assertEquals(RetryPolicy.FailureClass.FILE_ACCESS, failureClass);
+        assertTrue(failureClass.retryable());
+    }
+
+    @Test
+    void compilerErrorsTakePrecedenceOverLockedFiles() {
+        assertEquals(RetryPolicy.FailureClass.BUILD, policy.classify(List.of(
+                "/usr/share/dotnet/sdk/8.0.404/Microsoft.Common.CurrentVersion.targets(4806,5): warning MSB3026: Could not copy \"obj/a.dll\" to \"bin/a.dll\". Beginning retry 1 in 1000ms. [/src/a.csproj]",
+                "/src/A.cs(10,5): error CS1002: ; expected [/src/a.csproj]"
+        )));
+        assertEquals(RetryPolicy.FailureClass.UNKNOWN, policy.classify(List.of(
+                "/usr/share/dotnet/sdk/8.0.404/Microsoft.Common.CurrentVersion.targets(4806,5): warning MSB3026: Could not copy \"obj/a.dll\" to \"bin/a.dll\". Beginning retry 1 in 1000ms. [/src/a.csproj]"
+        )));
+    }
+
+    @Test
+    void compilerErrorsAndTestFailuresAreNotRetryable() {
+        RetryPolicy.FailureClass build = policy.classify(List.of("/src/A.cs(10,5): error CS1002: ; expected [/src/a.csproj]"));
+        RetryPolicy.FailureClass test = policy.classify(List.of("Failed!  - Failed:     1, Passed:    12, Skipped:     0, Total:    13"));
+        RetryPolicy.FailureClass unknown = policy.classify(List.of("something went wrong"));
+
+        assertEquals(RetryPolicy.FailureClass.BUILD, build);
+        assertEquals(RetryPolicy.FailureClass.TEST, test);
+        assertEquals(RetryPolicy.FailureClass.UNKNOWN, unknown);
+        assertFalse(build.retryable());
+        assertFalse(test.retryable());
+        assertFalse(unknown.retryable());
+    }
+
+    @Test
+    void retriesAreConfiguredPerOperation() {
+        assertEquals(2, policy.retries(RetryPolicy.BUILD));
+        assertEquals(0, policy.retries(RetryPolicy.PUSH));
+    }
+
+    @Test
+    void delayGrowsExponentiallyWithJitterUpToMaximum() {
+        for (int repetition = 0; repetition < 100; repetition++) {
+            long first = policy.delayMillis(1);
+            long second = policy.delayMillis(2);
+            long tenth = policy.delayMillis(10);
+
+            assertTrue(first >= 50 && first <= 100, "first delay " + first);
+            assertTrue(second >= 100 && second <= 200, "second delay " + second);
+            assertTrue(tenth >= 500 && tenth <= 1000, "tenth delay " + tenth);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class StreamingTrxConverterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void convertsTestRunToJUnitReport() throws Exception {
+
+        Path trx = TestResultConverterTest.writeTrx(directory, "run").toPath();
+        Path junit = directory.resolve("run.trx.xml");
+
+        new StreamingTrxConverter(-1).convert(trx, junit);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(junit.toFile());
+        Element suite = document.getDocumentElement();
+
+        Assertions.assertEquals("testsuite", suite.getTagName());
+        Assertions.assertEquals("run run", suite.getAttribute("name"));
+        Assertions.assertEquals("3", suite.getAttribute("tests"));
+        Assertions.assertEquals("1", suite.getAttribute("failures"));
+        Assertions.assertEquals("1", suite.getAttribute("skipped"));
+        Assertions.assertEquals("2024-01-01T10:00:00.0000000+01:00", suite.getAttribute("timestamp"));
+
+        NodeList testCases = suite.getElementsByTagName("testcase");
+
+        Assertions.assertEquals(3, testCases.getLength());
+
+        Element passed = (Element) testCases.item(0);
+
+        Assertions.assertEquals("a", passed.getAttribute("className"));
+        Assertions.assertEquals("Tests.A.Passes", passed.getAttribute("name"));
+        Assertions.assertEquals("1.500", passed.getAttribute("time"));
+        Assertions.assertEquals("some output", passed.getElementsByTagName("system-out").item(0).getTextContent());
+
+        Element failure = (Element) ((Element) testCases.item(1)).getElementsByTagName("failure").item(0);
+
+        Assertions.assertEquals("expected 1 but was 2", failure.getAttribute("message"));
+        Assertions.assertEquals("at Tests.A.Fails()", failure.getTextContent());
+
+        Assertions.assertEquals(1, ((Element) testCases.item(2)).getElementsByTagName("skipped").getLength());
+
+        try (var files = Files.list(directory)) {
+
+            Assertions.assertEquals(2, files.count(), "temporary files are removed");
+        }
+    }
+
+    @Test
+    public void mergesTestRuns() throws Exception {
+
+        List<Path> trxFiles = List.of(
+                TestResultConverterTest.writeTrx(directory, "first").toPath(),
+                TestResultConverterTest.writeTrx(directory, "second").toPath()
+        );
+
+        Path junit = directory.resolve("TEST-merged.xml");
+
+        StreamingTrxConverter.Totals totals = new StreamingTrxConverter(-1).merge("merged", trxFiles, junit);
+
+        Assertions.assertEquals(6, totals.tests());
+        Assertions.assertEquals(2, totals.failures());
+        Assertions.assertEquals(2, totals.skipped());
+        Assertions.assertEquals(Map.of("Tests.A", 3.5, "Tests.B", 0.0), totals.classDurations());
+        Assertions.assertEquals(Map.of("Tests", 3.5, StreamingTrxConverter.UNKNOWN, 0.0), totals.assemblyDurations());
+
+        Element suites = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(junit.toFile()).getDocumentElement();
+
+        Assertions.assertEquals("testsuites", suites.getTagName());
+        Assertions.assertEquals("6", suites.getAttribute("tests"));
+        Assertions.assertEquals("2", suites.getAttribute("failures"));
+        Assertions.assertEquals(2, suites.getElementsByTagName("testsuite").getLength());
+        Assertions.assertEquals(6, suites.getElementsByTagName("testcase").getLength());
+    }
+
+    @Test
+    public void truncatesCapturedOutput() throws Exception {
+
+        String output = "x".repeat(10_000);
+
+        Path trx = Files.writeString(directory.resolve("large.trx"), """
+                <?xml version="1.0" encoding="utf-8"?>
+                <TestRun name="large" xmlns="http://microsoft.com/schemas/VisualStudio/TeamTest/2010">
+                  <Results>
+                    <UnitTestResult testId="a" testName="Large" duration="00:01:00" outcome="Passed">
+                      <Output><StdOut>%s</StdOut></Output>
+                    </UnitTestResult>
+                  </Results>
+                </TestRun>
+                """.formatted(output).stripLeading(), StandardCharsets.UTF_8);
+
+        Path junit = directory.resolve("large.trx.xml");
+
+        new StreamingTrxConverter(100).convert(trx, junit);
+
+        String report = Files.readString(junit, StandardCharsets.UTF_8);
+
+        Assertions.assertTrue(report.contains("x".repeat(100) + "\n... (9900 characters omitted)"), report);
+        Assertions.assertFalse(report.contains("x".repeat(101)), report);
+        Assertions.assertTrue(report.contains("time=\"60.000\""), report);
+    }
+}
@@ -0,0 +1,69 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class TestDurationHistoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void mergesMovingAveragesOfConcurrentBuilds() throws IOException {
+
+        Path file = directory.resolve(TestDurationHistory.FILE_NAME);
+
+        TestDurationHistory first = TestDurationHistory.load(file);
+        TestDurationHistory second = TestDurationHistory.load(file);
+
+        Assertions.assertNull(first.estimate("project"));
+
+        first.record("project", 10);
+        first.record("class", 4);
+        first.save();
+
+        Assertions.assertEquals(10, first.estimate("project"));
+
+        // the second build loaded the history before the first one saved - its measurements must not replace them
+        second.record("project", 20);
+        second.save();
+
+        TestDurationHistory reloaded = TestDurationHistory.load(file);
+
+        Assertions.assertEquals(0.3 * 20 + 0.7 * 10, reloaded.estimate("project"), 0.001);
+        Assertions.assertEquals(4, reloaded.estimate("class"));
+    }
+
+    @Test
+    public void forgetsEntriesNotMeasuredForLong() throws IOException {
+
+        Path file = directory.resolve(TestDurationHistory.FILE_NAME);
+
+        Files.writeString(file, "legacy=3.5\nstale=2.0 100\nrecent=1.0 120\n", StandardCharsets.UTF_8);
+
+        TestDurationHistory history = TestDurationHistory.load(file);
+
+        Assertions.assertEquals(3.5, history.estimate("legacy"));
+        Assertions.assertEquals(Map.of("stale", 2.0), history.estimates("st"));
+
+        history.record("new", 5);
+        history.save(100 + TestDurationHistory.EXPIRY_DAYS + 1);
+
+        Assertions.assertNull(history.estimate("stale"));
+        Assertions.assertEquals(1.0, history.estimate("recent"));
+        Assertions.assertEquals(5, history.estimate("new"));
+
+        TestDurationHistory reloaded = TestDurationHistory.load(file);
+
+        Assertions.assertNull(reloaded.estimate("stale"));
+        Assertions.assertEquals(3.5, reloaded.estimate("legacy"));
+        Assertions.assertEquals(1.0, reloaded.estimate("recent"));
+    }
+}
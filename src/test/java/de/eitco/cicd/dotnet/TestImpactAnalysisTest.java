@@ -0,0 +1,115 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestImpactAnalysisTest {
+
+    @TempDir
+    Path root;
+
+    private Path directory;
+    private Path core;
+    private Path service;
+    private Path coreTests;
+    private Path serviceTests;
+    private List<Path> projects;
+    private List<Path> testProjects;
+
+    @BeforeEach
+    public void createProjects() throws Exception {
+
+        root = root.toRealPath();
+        directory = Files.createDirectories(root.resolve("dotnet"));
+
+        core = writeProject("Core");
+        service = writeProject("Service", "..\\Core\\Core.csproj");
+        coreTests = writeProject("Core.Tests", "../Core/Core.csproj");
+        serviceTests = writeProject("Service.Tests", "../Service/Service.csproj");
+
+        projects = TestSharding.findProjects(directory, List.of());
+        testProjects = List.of(coreTests, serviceTests);
+    }
+
+    private Path writeProject(String name, String... references) throws Exception {
+
+        StringBuilder content = new StringBuilder("<Project Sdk=\"Microsoft.NET.Sdk\">\n  <ItemGroup>\n");
+
+        for (String reference : references) {
+
+            content.append("    <ProjectReference Include=\"").append(reference).append("\" />\n");
+        }
+
+        content.append("  </ItemGroup>\n</Project>\n");
+
+        Path project = Files.createDirectories(directory.resolve(name)).resolve(name + TestSharding.PROJECT_SUFFIX);
+
+        return Files.writeString(project, content, StandardCharsets.UTF_8);
+    }
+
+    private TestImpactAnalysis.Selection select(Path... changedFiles) throws Exception {
+
+        return new TestImpactAnalysis(directory, List.of("Directory.Build.props", "build/*.targets"), new SystemStreamLog())
+                .select(root, List.of(changedFiles), projects, testProjects);
+    }
+
+    @Test
+    public void selectsTestProjectsDependingOnChangedProjects() throws Exception {
+
+        TestImpactAnalysis.Selection selection = select(core.resolveSibling("Sources/Model.cs"));
+
+        Assertions.assertFalse(selection.fullRun());
+        Assertions.assertEquals(List.of(coreTests, serviceTests), selection.testProjects());
+
+        selection = select(service.resolveSibling("Service.cs"), serviceTests.resolveSibling("ServiceTest.cs"));
+
+        Assertions.assertFalse(selection.fullRun());
+        Assertions.assertEquals(List.of(serviceTests), selection.testProjects());
+    }
+
+    @Test
+    public void selectsNothingForFilesOutsideOfTheDirectory() throws Exception {
+
+        TestImpactAnalysis.Selection selection = select(root.resolve("README.md"), root.resolve("docs/usage.md"));
+
+        Assertions.assertFalse(selection.fullRun());
+        Assertions.assertEquals(List.of(), selection.testProjects());
+    }
+
+    @Test
+    public void runsAllTestsIfAFileOutsideOfProjectsInTheDirectoryChanged() throws Exception {
+
+        TestImpactAnalysis.Selection selection = select(core.resolveSibling("Model.cs"), directory.resolve("docs/usage.md"));
+
+        Assertions.assertTrue(selection.fullRun());
+        Assertions.assertEquals(testProjects, selection.testProjects());
+    }
+
+    @Test
+    public void runsAllTestsIfATriggerChanged() throws Exception {
+
+        Assertions.assertTrue(select(core.resolveSibling("Model.cs"), directory.resolve("Directory.Build.props")).fullRun());
+        Assertions.assertTrue(select(root.resolve("build/common.targets")).fullRun());
+        Assertions.assertFalse(select(root.resolve("other/build/common.targets")).fullRun());
+    }
+
+    @Test
+    public void runsAllTestsIfAProjectOutsideOfTheDirectoryChanged() throws Exception {
+
+        Path library = Files.createDirectories(root.resolve("library"));
+        Files.writeString(library.resolve("Library.csproj"), "<Project />", StandardCharsets.UTF_8);
+
+        TestImpactAnalysis.Selection selection = select(library.resolve("Library.cs"));
+
+        Assertions.assertTrue(selection.fullRun());
+        Assertions.assertEquals(testProjects, selection.testProjects());
+    }
+}
@@ -0,0 +1,103 @@
+package de.eitco.cicd.dotnet;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestResultConverterTest {
+
+    static final String TRX = """
+            <?xml version="1.0" encoding="utf-8"?>
+            <TestRun id="1" name="run %1$s" xmlns="http://microsoft.com/schemas/VisualStudio/TeamTest/2010">
+              <Times creation="2024-01-01T10:00:00.0000000+01:00" />
+              <Results>
+                <UnitTestResult testId="a" testName="Tests.A.Passes" duration="00:00:01.5000000" outcome="Passed">
+                  <Output>
+                    <StdOut>some output</StdOut>
+                  </Output>
+                </UnitTestResult>
+                <UnitTestResult testId="b" testName="Tests.A.Fails" duration="00:00:00.2500000" outcome="Failed">
+                  <Output>
+                    <ErrorInfo>
+                      <Message>expected 1 but was 2</Message>
+                      <StackTrace>at Tests.A.Fails()</StackTrace>
+                    </ErrorInfo>
+                  </Output>
+                </UnitTestResult>
+                <UnitTestResult testId="c" testName="Tests.B.Skipped" duration="00:00:00" outcome="NotExecuted" />
+              </Results>
+              <TestDefinitions>
+                <UnitTest name="Passes" id="a">
+                  <TestMethod codeBase="/build/bin/Debug/net8.0/Tests.dll" className="Tests.A" name="Passes" />
+                </UnitTest>
+                <UnitTest name="Fails" id="b">
+                  <TestMethod codeBase="C:\\build\\Tests.dll" className="Tests.A, Tests, Version=1.0.0.0" name="Fails" />
+                </UnitTest>
+                <UnitTest name="Skipped" id="c">
+                  <TestMethod className="Tests.B" name="Skipped" />
+                </UnitTest>
+              </TestDefinitions>
+            </TestRun>
+            """;
+
+    @TempDir
+    Path directory;
+
+    static File writeTrx(Path directory, String name) throws IOException {
+
+        return Files.writeString(directory.resolve(name + ".trx"), TRX.formatted(name).stripLeading(), StandardCharsets.UTF_8).toFile();
+    }
+
+    @Test
+    public void convertsOnlyOutdatedResultFiles() throws IOException, MojoExecutionException {
+
+        List<File> files = List.of(writeTrx(directory, "first"), writeTrx(directory, "second"), writeTrx(directory, "third"));
+
+        TestResultConverter converter = new TestResultConverter(2, true, -1, new SystemStreamLog());
+
+        Assertions.assertEquals(3, converter.convert(files));
+
+        String report = Files.readString(TestResultConverter.junitFile(files.get(1)).toPath(), StandardCharsets.UTF_8);
+
+        Assertions.assertTrue(report.contains("name=\"run second\""), report);
+        Assertions.assertTrue(report.contains("tests=\"3\""), report);
+        Assertions.assertTrue(report.contains("skipped=\"1\""), report);
+
+        Assertions.assertEquals(0, converter.convert(files));
+
+        Assertions.assertEquals(3, new TestResultConverter(2, false, -1, new SystemStreamLog()).convert(files), "the converter changed");
+        Assertions.assertEquals(3, new TestResultConverter(2, false, 100, new SystemStreamLog()).convert(files), "its settings changed");
+
+        converter = new TestResultConverter(2, false, 100, new SystemStreamLog());
+
+        Assertions.assertEquals(0, converter.convert(files));
+
+        Assertions.assertTrue(files.get(0).setLastModified(TestResultConverter.junitFile(files.get(0)).lastModified() + 2000));
+
+        Assertions.assertEquals(1, converter.convert(files));
+    }
+
+    @Test
+    public void leavesNoPartialReportBehind() throws IOException {
+
+        File broken = Files.writeString(directory.resolve("broken.trx"), "<TestRun><Results><UnitTestResult", StandardCharsets.UTF_8).toFile();
+
+        TestResultConverter converter = new TestResultConverter(1, true, -1, new SystemStreamLog());
+
+        Assertions.assertThrows(MojoExecutionException.class, () -> converter.convert(List.of(broken)));
+
+        try (var files = Files.list(directory)) {
+
+            Assertions.assertEquals(List.of(broken.toPath()), files.filter(file -> !file.getFileName().toString().equals(TestResultConverter.SETTINGS_FILE_NAME)).toList());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.eitco.cicd.dotnet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class TestShardingTest {
+
+    @TempDir
+    Path directory;
+
+    private Path project(String path, String content) throws IOException {
+
+        Path project = directory.resolve(path);
+        Files.createDirectories(project.getParent());
+
+        return Files.writeString(project, "<Project Sdk=\"Microsoft.NET.Sdk\">" + content + "</Project>");
+    }
+
+    @Test
+    public void findsTestProjects() throws IOException {
+
+        Path sdkReference = project("src/test/cs/a-test.csproj", "<ItemGroup><PackageReference Include=\"Microsoft.NET.Test.Sdk\" Version=\"17.0.0\" /></ItemGroup>");
+        Path property = project("tests/b/b.Tests.csproj", "<PropertyGroup><IsTestProject>true</IsTestProject></PropertyGroup>");
+
+        project("src/main/cs/a.csproj", "");
+        project("tests/helpers/helpers.csproj", "<PropertyGroup><IsTestProject>false</IsTestProject></PropertyGroup><ItemGroup><PackageReference Include=\"Microsoft.NET.Test.Sdk\" /></ItemGroup>");
+        project("src/test/cs/obj/copy.csproj", "<PropertyGroup><IsTestProject>true</IsTestProject></PropertyGroup>");
+        project("target/copy/copy.csproj", "<PropertyGroup><IsTestProject>true</IsTestProject></PropertyGroup>");
+        project("excluded/c.csproj", "<PropertyGroup><IsTestProject>true</IsTestProject></PropertyGroup>");
+
+        Assertions.assertEquals(
+                List.of(sdkReference, property).stream().sorted().toList(),
+                TestSharding.findTestProjects(directory, List.of(directory.resolve("excluded")))
+        );
+    }
+
+    @Test
+    public void balancesShardsLongestFirst() {
+
+        Map<String, Integer> durations = Map.of("a", 7, "b", 5, "c", 4, "d", 3, "e", 3, "f", 2);
+
+        List<List<String>> shards = TestSharding.balance(List.of("f", "e", "d", "c", "b", "a"), durations::get, 2);
+
+        Assertions.assertEquals(List.of(List.of("a", "e", "f"), List.of("b", "c", "d")), shards);
+
+        for (List<String> shard : shards) {
+
+            Assertions.assertEquals(12, shard.stream().mapToInt(durations::get).sum());
+        }
+
+        Assertions.assertEquals(List.of(List.of("a"), List.of("b")), TestSharding.balance(List.of("a", "b"), item -> 1, 4));
+        Assertions.assertEquals(List.of(List.of("a", "c"), List.of("b")), TestSharding.balance(List.of("a", "b", "c"), item -> 1, 2));
+    }
+}